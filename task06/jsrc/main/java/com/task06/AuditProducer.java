@@ -2,12 +2,15 @@ package com.task06;
 
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
+import com.amazonaws.services.dynamodbv2.document.BatchWriteItemOutcome;
 import com.amazonaws.services.dynamodbv2.document.DynamoDB;
 import com.amazonaws.services.dynamodbv2.document.Item;
-import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.document.TableWriteItems;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.DynamodbEvent;
+import com.amazonaws.services.lambda.runtime.events.StreamsEventResponse;
 import com.amazonaws.services.lambda.runtime.events.models.dynamodb.AttributeValue;
 import com.syndicate.deployment.annotations.environment.EnvironmentVariable;
 import com.syndicate.deployment.annotations.environment.EnvironmentVariables;
@@ -15,12 +18,21 @@ import com.syndicate.deployment.annotations.events.DynamoDbTriggerEventSource;
 import com.syndicate.deployment.annotations.lambda.LambdaHandler;
 import com.syndicate.deployment.model.RetentionSetting;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
 
 @LambdaHandler(
         lambdaName = "audit_producer",
@@ -31,44 +43,127 @@ import java.util.UUID;
 )
 @DynamoDbTriggerEventSource(
         targetTable = "Configuration",
-        batchSize = 1
+        batchSize = 100
 )
 @EnvironmentVariables(value = {
         @EnvironmentVariable(key = "target_table", value = "${target_table}")
 })
-public class AuditProducer implements RequestHandler<DynamodbEvent, String> {
+public class AuditProducer implements RequestHandler<DynamodbEvent, StreamsEventResponse> {
+
+    // BatchWriteItem limit
+    private static final int BATCH_WRITE_SIZE = 25;
+
+    private static final int MAX_BATCH_ATTEMPTS = 5;
+
+    private static final long BASE_BACKOFF_MILLIS = 50;
+
+    // Chunks written at the same time. Audit has 1 write unit; a batch of 100 items fits its burst capacity,
+    // and Configuration, also at 1 write unit, cannot produce records faster than that on average
+    private static final int WRITE_CONCURRENCY = 2;
 
     private final AmazonDynamoDB client = AmazonDynamoDBClientBuilder.standard().build();
     private final DynamoDB dynamoDb = new DynamoDB(client);
     private final String DYNAMODB_TABLE_NAME = System.getenv("target_table");
-    private final Table AUDIT_TABLE = dynamoDb.getTable(DYNAMODB_TABLE_NAME);
+    private final ExecutorService executor = Executors.newFixedThreadPool(WRITE_CONCURRENCY, runnable -> {
+        Thread thread = new Thread(runnable, "audit-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
 
+    /**
+     * Audits every INSERT and MODIFY of the batch. Failed writes are returned as batch item failures, so with
+     * ReportBatchItemFailures enabled Lambda retries the batch from the first failed record.
+     */
     @Override
-    public String handleRequest(DynamodbEvent event, Context context) {
+    public StreamsEventResponse handleRequest(DynamodbEvent event, Context context) {
 
+        // Audit item id -> sequence number of the stream record it comes from
+        Map<String, String> sequenceNumbers = new HashMap<>();
+        List<Item> auditItems = new ArrayList<>();
         for (DynamodbEvent.DynamodbStreamRecord record : event.getRecords()) {
             String eventName = record.getEventName();
-            if (eventName.equals("INSERT")) {
-                auditTableAddData(record
-                        .getDynamodb()
-                        .getNewImage());
-                break;
-            } else if (eventName.equals("MODIFY")) {
-                auditTableUpData(
-                        record
-                                .getDynamodb()
-                                .getNewImage(),
-                        record
-                                .getDynamodb()
-                                .getOldImage());
-            } else {
-                break;
+            Item auditItem = null;
+            try {
+                if (eventName.equals("INSERT")) {
+                    auditItem = auditTableAddData(record, record
+                            .getDynamodb()
+                            .getNewImage());
+                } else if (eventName.equals("MODIFY")) {
+                    auditItem = auditTableUpData(
+                            record,
+                            record
+                                    .getDynamodb()
+                                    .getNewImage(),
+                            record
+                                    .getDynamodb()
+                                    .getOldImage());
+                }
+            } catch (RuntimeException e) {
+                // A malformed image fails the same way on every retry, so it is logged and skipped
+                context.getLogger().log("Skipping record " + record.getEventID() + ": " + e);
+            }
+            if (auditItem != null) {
+                auditItems.add(auditItem);
+                sequenceNumbers.put(auditItem.getString("id"), record.getDynamodb().getSequenceNumber());
+            }
+        }
+
+        List<CompletableFuture<Set<String>>> writes = new ArrayList<>();
+        for (int from = 0; from < auditItems.size(); from += BATCH_WRITE_SIZE) {
+            List<Item> chunk = auditItems.subList(from, Math.min(from + BATCH_WRITE_SIZE, auditItems.size()));
+            writes.add(CompletableFuture.supplyAsync(() -> writeChunk(chunk, context), executor));
+        }
+
+        List<StreamsEventResponse.BatchItemFailure> failures = new ArrayList<>();
+        for (CompletableFuture<Set<String>> write : writes) {
+            for (String failedId : write.join()) {
+                failures.add(new StreamsEventResponse.BatchItemFailure(sequenceNumbers.get(failedId)));
+            }
+        }
+        context.getLogger().log("Wrote " + (auditItems.size() - failures.size()) + " audit items for "
+                + event.getRecords().size() + " records, " + failures.size() + " failed");
+        return new StreamsEventResponse(failures);
+    }
+
+    /**
+     * Writes up to {@link #BATCH_WRITE_SIZE} audit items, retrying unprocessed ones with jittered backoff.
+     *
+     * @return ids of the items that could not be written
+     */
+    private Set<String> writeChunk(List<Item> chunk, Context context) {
+
+        Set<String> failedIds = new HashSet<>();
+        try {
+            BatchWriteItemOutcome outcome = dynamoDb.batchWriteItem(
+                    new TableWriteItems(DYNAMODB_TABLE_NAME).withItemsToPut(chunk));
+            for (int attempt = 1; attempt < MAX_BATCH_ATTEMPTS && !outcome.getUnprocessedItems().isEmpty(); attempt++) {
+                long ceiling = BASE_BACKOFF_MILLIS << attempt;
+                Thread.sleep(ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1));
+                outcome = dynamoDb.batchWriteItemUnprocessed(outcome.getUnprocessedItems());
+            }
+            for (WriteRequest request : outcome.getUnprocessedItems().getOrDefault(DYNAMODB_TABLE_NAME, new ArrayList<>())) {
+                failedIds.add(request.getPutRequest().getItem().get("id").getS());
+            }
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            context.getLogger().log("Failed to write " + chunk.size() + " audit items: " + e.getMessage());
+            for (Item item : chunk) {
+                failedIds.add(item.getString("id"));
             }
         }
-        return "";
+        return failedIds;
     }
 
-    private void auditTableUpData(
+    // Derived from the stream record, so a retried record overwrites its audit item instead of adding another
+    private String auditId(DynamodbEvent.DynamodbStreamRecord record) {
+
+        return UUID.nameUUIDFromBytes(record.getEventID().getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    private Item auditTableUpData(
+            DynamodbEvent.DynamodbStreamRecord record,
             Map<String, AttributeValue> newImage,
             Map<String, AttributeValue> oldImage) {
 
@@ -76,23 +171,22 @@ public class AuditProducer implements RequestHandler<DynamodbEvent, String> {
         int previousValue = Integer.parseInt(oldImage.get("value").getN());
         int newValue = Integer.parseInt(newImage.get("value").getN());
 
-        if (newValue != previousValue) {
-            Item updateAuditItem = new Item();
-
-            AUDIT_TABLE.putItem(updateAuditItem.withPrimaryKey("id", UUID
-                            .randomUUID()
-                            .toString())
-                    .withString("itemKey", key)
-                    .withString("modificationTime", DateTimeFormatter
-                            .ISO_INSTANT
-                            .format(Instant.now().atOffset(ZoneOffset.UTC)))
-                    .withString("updatedAttribute", "value")
-                    .withInt("oldValue", previousValue)
-                    .withInt("newValue", newValue));
+        if (newValue == previousValue) {
+            return null;
         }
+        Item updateAuditItem = new Item();
+
+        return updateAuditItem.withPrimaryKey("id", auditId(record))
+                .withString("itemKey", key)
+                .withString("modificationTime", DateTimeFormatter
+                        .ISO_INSTANT
+                        .format(Instant.now().atOffset(ZoneOffset.UTC)))
+                .withString("updatedAttribute", "value")
+                .withInt("oldValue", previousValue)
+                .withInt("newValue", newValue);
     }
 
-    private void auditTableAddData(Map<String, AttributeValue> newImage) {
+    private Item auditTableAddData(DynamodbEvent.DynamodbStreamRecord record, Map<String, AttributeValue> newImage) {
 
         String key = newImage.get("key").getS();
         int value = Integer.parseInt(newImage.get("value").getN());
@@ -103,13 +197,11 @@ public class AuditProducer implements RequestHandler<DynamodbEvent, String> {
 
         Item item = new Item();
 
-        AUDIT_TABLE.putItem(item.withPrimaryKey("id", UUID
-                        .randomUUID()
-                        .toString())
+        return item.withPrimaryKey("id", auditId(record))
                 .withString("itemKey", key)
                 .withString("modificationTime", DateTimeFormatter
                         .ISO_INSTANT
                         .format(Instant.now().atOffset(ZoneOffset.UTC)))
-                .withMap("newValue", newValue));
+                .withMap("newValue", newValue);
     }
 }
@@ -12,6 +12,14 @@ import com.syndicate.deployment.model.lambda.url.AuthType;
 import com.syndicate.deployment.model.lambda.url.InvokeMode;
 import org.example.OpenMeteoWeather;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
 @LambdaHandler(
         lambdaName = "api_handler",
         roleName = "api_handler-role",
@@ -30,22 +38,86 @@ import org.example.OpenMeteoWeather;
         authType = AuthType.NONE,
         invokeMode = InvokeMode.BUFFERED
 )
-public class ApiHandler implements RequestHandler<Object, String> {
+public class ApiHandler implements RequestHandler<Object, Map<String, Object>> {
+
+    // Open-Meteo updates its models hourly at most
+    private static final long CACHE_TTL_MILLIS = Duration.ofMinutes(15).toMillis();
+
+    // callApi() always requests the same forecast, so there is a single cache key
+    private static final String FORECAST_KEY = "forecast";
+
+    // Created once per container and reused by warm invocations
+    private static final OpenMeteoWeather WEATHER_CLIENT = new OpenMeteoWeather();
+
+    private static final WeatherCache WEATHER_CACHE = new WeatherCache(CACHE_TTL_MILLIS);
 
     @Override
-    public String handleRequest(Object input, Context context) {
-        String weatherData = getWeatherData(context);
-        context.getLogger().log("Weather Data: " + weatherData);
+    public Map<String, Object> handleRequest(Object input, Context context) {
+        try {
+            String weatherData = WEATHER_CACHE.get(FORECAST_KEY, ApiHandler::fetchWeatherData);
+            if (gzipRequested(input)) {
+                return createGzipResponse(weatherData);
+            }
+            return createResponse(200, weatherData);
+        } catch (IOException e) {
+            context.getLogger().log("Failed to retrieve weather data: " + e.getMessage());
+            return createResponse(502, "{\"message\": \"Weather service unavailable\"}");
+        } catch (Exception e) {
+            context.getLogger().log("Error: " + e.getMessage());
+            return createResponse(500, "{\"message\": \"Internal Server Error\"}");
+        }
+    }
+
+    private static String fetchWeatherData() throws IOException {
+        // The layer client catches its own exceptions and returns an empty body instead
+        String weatherData = WEATHER_CLIENT.callApi();
+        if (weatherData == null || weatherData.isEmpty()) {
+            throw new IOException("Open-Meteo returned no data");
+        }
+        System.out.println("Fetched weather data: " + weatherData.length() + " chars");
         return weatherData;
     }
 
-    private String getWeatherData(Context context) {
-        OpenMeteoWeather weatherClient = new OpenMeteoWeather();
-        try {
-            return weatherClient.callApi();
-        } catch (Exception e) {
-            context.getLogger().log("Failed to retrieve weather data: " + e.getMessage());
-            return "Error: " + e.getMessage();
+    // ?gzip=true, or an Accept-Encoding that lists gzip; function URL events have lower-case header names
+    private static boolean gzipRequested(Object input) {
+        if (!(input instanceof Map)) {
+            return false;
+        }
+        Object query = ((Map<?, ?>) input).get("queryStringParameters");
+        if (query instanceof Map && "true".equalsIgnoreCase(String.valueOf(((Map<?, ?>) query).get("gzip")))) {
+            return true;
+        }
+        Object headers = ((Map<?, ?>) input).get("headers");
+        if (!(headers instanceof Map) || ((Map<?, ?>) headers).get("accept-encoding") == null) {
+            return false;
+        }
+        for (String encoding : String.valueOf(((Map<?, ?>) headers).get("accept-encoding")).split(",")) {
+            if (encoding.trim().split(";")[0].equalsIgnoreCase("gzip")) {
+                return true;
+            }
         }
+        return false;
+    }
+
+    // Function URLs pass binary bodies base64-encoded
+    private static Map<String, Object> createGzipResponse(String body) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        return Map.of(
+                "statusCode", 200,
+                "headers", Map.of("Content-Type", "application/json", "Content-Encoding", "gzip"),
+                "body", Base64.getEncoder().encodeToString(compressed.toByteArray()),
+                "isBase64Encoded", true
+        );
+    }
+
+    private static Map<String, Object> createResponse(int statusCode, String body) {
+        return Map.of(
+                "statusCode", statusCode,
+                "headers", Map.of("Content-Type", "application/json"),
+                "body", body
+        );
     }
 }
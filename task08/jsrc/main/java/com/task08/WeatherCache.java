@@ -0,0 +1,79 @@
+package com.task08;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Keeps the last successful response per key for a fixed time to live. Concurrent misses for the same key share
+ * one load: the first caller runs it and the others wait for its result, so at most one upstream request per key
+ * is in flight. Failed loads are not cached.
+ */
+class WeatherCache {
+
+    interface Loader {
+        String load() throws IOException;
+    }
+
+    private final long ttlMillis;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    WeatherCache(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    String get(String key, Loader loader) throws IOException {
+        Entry entry = entries.get(key);
+        if (entry != null && System.currentTimeMillis() < entry.expiresAt) {
+            return entry.body;
+        }
+
+        CompletableFuture<String> load = new CompletableFuture<>();
+        CompletableFuture<String> running = inFlight.putIfAbsent(key, load);
+        if (running != null) {
+            return await(running);
+        }
+        try {
+            String body = loader.load();
+            entries.put(key, new Entry(body, System.currentTimeMillis() + ttlMillis));
+            load.complete(body);
+            return body;
+        } catch (IOException | RuntimeException e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, load);
+        }
+    }
+
+    private static String await(CompletableFuture<String> load) throws IOException {
+        try {
+            return load.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the weather request", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private static class Entry {
+
+        private final String body;
+
+        private final long expiresAt;
+
+        Entry(String body, long expiresAt) {
+            this.body = body;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.task09;
+
+import java.time.Duration;
+
+/**
+ * Stops calling a failing upstream for a while. After {@code failureThreshold} consecutive failures the circuit
+ * opens for {@code openDuration}; then a single trial call is let through, and its outcome closes the circuit
+ * or opens it again.
+ */
+final class CircuitBreaker {
+
+    private final int failureThreshold;
+
+    private final long openMillis;
+
+    private int consecutiveFailures;
+
+    private long openUntilMillis;
+
+    private boolean trialInFlight;
+
+    CircuitBreaker(int failureThreshold, Duration openDuration) {
+
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openDuration.toMillis();
+    }
+
+    /**
+     * Whether a call may be made now; every permitted call must be followed by {@link #onSuccess()} or {@link #onFailure()}.
+     */
+    synchronized boolean tryAcquire() {
+
+        if (consecutiveFailures < failureThreshold) {
+            return true;
+        }
+        if (System.currentTimeMillis() < openUntilMillis || trialInFlight) {
+            return false;
+        }
+        trialInFlight = true;
+        return true;
+    }
+
+    synchronized void onSuccess() {
+
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+
+    synchronized void onFailure() {
+
+        consecutiveFailures++;
+        trialInFlight = false;
+        if (consecutiveFailures >= failureThreshold) {
+            openUntilMillis = System.currentTimeMillis() + openMillis;
+            System.out.println("Circuit opened after " + consecutiveFailures + " consecutive upstream failures");
+        }
+    }
+}
@@ -0,0 +1,357 @@
+package com.task09;
+
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.task09.weatherDTO.Forecast;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Open-Meteo forecasts cached per {@link ForecastQuery#cacheKey()} in memory and in the Weather table, so a cold
+ * container starts with the last known forecast. Table items hold the forecast in the compact form of
+ * {@link ForecastStore#withForecast}, and are only written when a new forecast arrives, not after a 304. Freshness follows the upstream Cache-Control max-age or Expires
+ * headers ({@link #DEFAULT_MAX_AGE} without them); expired entries are revalidated with If-None-Match /
+ * If-Modified-Since.
+ * <p>
+ * Entries up to {@link #STALE_WHILE_REVALIDATE} past their freshness are returned right away while one refresh
+ * per key runs in the background. In Lambda that refresh finishes during this invocation or, if the container is
+ * frozen first, at the start of the next one. When the upstream fails, entries up to {@link #STALE_IF_ERROR} old are
+ * still served, and a {@link CircuitBreaker} stops calling the upstream after repeated failures.
+ */
+final class ForecastCache {
+
+    static final String OPEN_METEO_URL = "https://api.open-meteo.com/v1/forecast";
+
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(2);
+
+    // Time until the response headers arrive
+    private static final Duration RESPONSE_TIMEOUT = Duration.ofSeconds(5);
+
+    private static final Duration DEFAULT_MAX_AGE = Duration.ofMinutes(15);
+
+    private static final Duration STALE_WHILE_REVALIDATE = Duration.ofHours(3);
+
+    private static final Duration STALE_IF_ERROR = Duration.ofHours(24);
+
+    private static final int CIRCUIT_FAILURE_THRESHOLD = 5;
+
+    private static final Duration CIRCUIT_OPEN_DURATION = Duration.ofSeconds(30);
+
+    // Cache items share the Weather table with the stored forecasts
+    private static final String ITEM_PREFIX = "forecast-cache#";
+
+    // Created once per container, so warm invocations reuse the pooled keep-alive connection to Open-Meteo
+    private static final HttpClient HTTP_CLIENT = HttpClient.newBuilder()
+            .connectTimeout(CONNECT_TIMEOUT)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+
+    // Builds the Forecast deserializer during init instead of on the first request
+    private static final ObjectReader FORECAST_READER = new ObjectMapper().readerFor(Forecast.class);
+
+    private final String baseUrl;
+
+    private final Table table;
+
+    private final CircuitBreaker circuitBreaker;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final Map<String, CompletableFuture<Entry>> refreshes = new ConcurrentHashMap<>();
+
+    ForecastCache(String baseUrl, Table table) {
+
+        this(baseUrl, table, new CircuitBreaker(CIRCUIT_FAILURE_THRESHOLD, CIRCUIT_OPEN_DURATION));
+    }
+
+    // Tests pass a breaker with a short open duration
+    ForecastCache(String baseUrl, Table table, CircuitBreaker circuitBreaker) {
+
+        this.baseUrl = baseUrl;
+        this.table = table;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * @throws IOException if there is no usable cached forecast and the upstream cannot be reached or fails
+     */
+    Forecast get(ForecastQuery query) throws IOException {
+
+        return get(query, false);
+    }
+
+    /**
+     * Like {@link #get}, but a stale entry is refreshed before it is returned instead of in the background. Meant for
+     * callers that fetch many keys on a bounded pool: the pool then bounds the upstream requests as well.
+     */
+    Forecast getRevalidated(ForecastQuery query) throws IOException {
+
+        return get(query, true);
+    }
+
+    private Forecast get(ForecastQuery query, boolean awaitRefresh) throws IOException {
+
+        String key = query.cacheKey();
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = load(key);
+            if (entry != null) {
+                entries.putIfAbsent(key, entry);
+            }
+        }
+        long now = System.currentTimeMillis();
+        if (entry != null && now < entry.freshUntilMillis) {
+            return entry.forecast;
+        }
+        if (!awaitRefresh && entry != null && now < entry.freshUntilMillis + STALE_WHILE_REVALIDATE.toMillis()) {
+            refresh(query, entry);
+            return entry.forecast;
+        }
+        try {
+            return await(refresh(query, entry)).forecast;
+        } catch (IOException e) {
+            if (entry != null && now < entry.freshUntilMillis + STALE_IF_ERROR.toMillis()) {
+                System.err.println("Serving stale forecast for " + key + ": " + e.getMessage());
+                return entry.forecast;
+            }
+            throw e;
+        }
+    }
+
+    // One refresh per key at a time; callers arriving meanwhile share it
+    private CompletableFuture<Entry> refresh(ForecastQuery query, Entry current) {
+
+        String key = query.cacheKey();
+        CompletableFuture<Entry> ownRefresh = new CompletableFuture<>();
+        CompletableFuture<Entry> running = refreshes.putIfAbsent(key, ownRefresh);
+        if (running != null) {
+            return running;
+        }
+        fetch(query, current).whenComplete((entry, error) -> {
+            // The new entry is in place before the refresh is released, so no caller starts another one in between
+            if (entry != null) {
+                entries.put(key, entry);
+            }
+            refreshes.remove(key, ownRefresh);
+            if (error != null) {
+                System.err.println("Refresh of " + key + " failed: " + unwrap(error).getMessage());
+                ownRefresh.completeExceptionally(error);
+            } else {
+                ownRefresh.complete(entry);
+            }
+        });
+        return ownRefresh;
+    }
+
+    private CompletableFuture<Entry> fetch(ForecastQuery query, Entry current) {
+
+        if (!circuitBreaker.tryAcquire()) {
+            return CompletableFuture.failedFuture(new IOException("Open-Meteo circuit is open, not calling upstream"));
+        }
+        HttpRequest.Builder request = HttpRequest.newBuilder(query.uri(baseUrl))
+                .timeout(RESPONSE_TIMEOUT)
+                .header("Accept", "application/json")
+                .header("Accept-Encoding", "gzip")
+                .GET();
+        if (current != null && current.etag != null) {
+            request.header("If-None-Match", current.etag);
+        }
+        if (current != null && current.lastModified != null) {
+            request.header("If-Modified-Since", current.lastModified);
+        }
+        return HTTP_CLIENT.sendAsync(request.build(), HttpResponse.BodyHandlers.ofInputStream())
+                .handle((response, error) -> {
+                    if (error != null) {
+                        circuitBreaker.onFailure();
+                        Throwable cause = unwrap(error);
+                        throw new UncheckedIOException(new IOException("Open-Meteo request failed: " + cause.getMessage(), cause));
+                    }
+                    if (response.statusCode() >= 500 || response.statusCode() == 429) {
+                        circuitBreaker.onFailure();
+                    } else {
+                        circuitBreaker.onSuccess();
+                    }
+                    Entry entry = toEntry(query.cacheKey(), response, current);
+                    // After a 304 the stored forecast is still current; a cold container revalidates it once
+                    if (response.statusCode() != 304) {
+                        store(entry);
+                    }
+                    return entry;
+                });
+    }
+
+    // Parses the forecast straight from the response stream, which is always closed so the connection is reused
+    private Entry toEntry(String key, HttpResponse<InputStream> response, Entry current) {
+
+        long now = System.currentTimeMillis();
+        long freshUntil = now + freshness(response.headers(), now).toMillis();
+        Optional<String> etag = response.headers().firstValue("ETag");
+        Optional<String> lastModified = response.headers().firstValue("Last-Modified");
+        try (InputStream body = decoded(response)) {
+            if (response.statusCode() == 304 && current != null) {
+                return new Entry(key, current.forecast, etag.orElse(current.etag),
+                        lastModified.orElse(current.lastModified), freshUntil);
+            }
+            if (response.statusCode() != 200) {
+                throw new IOException("Open-Meteo responded with status " + response.statusCode());
+            }
+            return new Entry(key, FORECAST_READER.readValue(body), etag.orElse(null), lastModified.orElse(null), freshUntil);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // no-store is treated like no-cache: revalidated on every request, still served if the upstream fails
+    private static Duration freshness(HttpHeaders headers, long now) {
+
+        Optional<String> cacheControl = headers.firstValue("Cache-Control");
+        if (cacheControl.isPresent()) {
+            for (String directive : cacheControl.get().toLowerCase(Locale.ROOT).split(",")) {
+                directive = directive.trim();
+                if (directive.equals("no-cache") || directive.equals("no-store")) {
+                    return Duration.ZERO;
+                }
+                if (directive.startsWith("max-age=")) {
+                    try {
+                        long maxAge = Long.parseLong(directive.substring("max-age=".length()));
+                        long age = headers.firstValueAsLong("Age").orElse(0);
+                        return Duration.ofSeconds(Math.max(0, maxAge - age));
+                    } catch (NumberFormatException e) {
+                        return Duration.ZERO;
+                    }
+                }
+            }
+        }
+        Optional<String> expires = headers.firstValue("Expires");
+        if (expires.isPresent()) {
+            try {
+                long expiresAt = ZonedDateTime.parse(expires.get(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+                return Duration.ofMillis(Math.max(0, expiresAt - now));
+            } catch (DateTimeParseException e) {
+                // An invalid Expires means already expired
+                return Duration.ZERO;
+            }
+        }
+        return DEFAULT_MAX_AGE;
+    }
+
+    // HttpClient does not decompress by itself
+    private static InputStream decoded(HttpResponse<InputStream> response) throws IOException {
+
+        boolean gzip = response.headers().firstValue("Content-Encoding")
+                .map(encoding -> encoding.equalsIgnoreCase("gzip"))
+                .orElse(false);
+        if (!gzip || response.statusCode() != 200) {
+            return response.body();
+        }
+        try {
+            return new GZIPInputStream(response.body());
+        } catch (IOException e) {
+            response.body().close();
+            throw e;
+        }
+    }
+
+    private Entry load(String key) {
+
+        try {
+            Item item = table.getItem("id", ITEM_PREFIX + key);
+            if (item == null) {
+                return null;
+            }
+            // Items written before the compact form hold the raw response
+            Forecast forecast = item.isPresent("forecast")
+                    ? ForecastStore.fromItem(item)
+                    : FORECAST_READER.readValue(item.getString("body"));
+            return new Entry(key, forecast, item.getString("etag"), item.getString("lastModified"), item.getLong("freshUntil"));
+        } catch (Exception e) {
+            System.err.println("Error while loading cached forecast " + key + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void store(Entry entry) {
+
+        try {
+            Item item = ForecastStore.withForecast(new Item().withPrimaryKey("id", ITEM_PREFIX + entry.key), entry.forecast)
+                    .withLong("freshUntil", entry.freshUntilMillis)
+                    // For DynamoDB TTL, in epoch seconds; the entry is of no use after STALE_IF_ERROR
+                    .withLong("ttl", (entry.freshUntilMillis + STALE_IF_ERROR.toMillis()) / 1000);
+            if (entry.etag != null) {
+                item.withString("etag", entry.etag);
+            }
+            if (entry.lastModified != null) {
+                item.withString("lastModified", entry.lastModified);
+            }
+            table.putItem(item);
+        } catch (Exception e) {
+            // The in-memory entry still works, the next cold container just starts empty
+            System.err.println("Error while storing cached forecast " + entry.key + ": " + e.getMessage());
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = unwrap(e);
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+
+        while ((error instanceof CompletionException || error instanceof UncheckedIOException) && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+
+    private static final class Entry {
+
+        private final String key;
+
+        private final Forecast forecast;
+
+        private final String etag;
+
+        private final String lastModified;
+
+        private final long freshUntilMillis;
+
+        private Entry(String key, Forecast forecast, String etag, String lastModified, long freshUntilMillis) {
+
+            this.key = key;
+            this.forecast = forecast;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.freshUntilMillis = freshUntilMillis;
+        }
+    }
+}
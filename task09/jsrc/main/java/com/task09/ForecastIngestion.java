@@ -0,0 +1,226 @@
+package com.task09;
+
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.task09.weatherDTO.Forecast;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Ingests forecasts for many locations in one run: at most {@link #MAX_IN_FLIGHT} locations are fetched at a time
+ * through the {@link ForecastCache}. Stale entries are revalidated on the fetching thread rather than in the
+ * background, so that limit also holds for the upstream requests. Forecasts whose content hash is already stored under their key (or that
+ * repeat another location of the same run) are reported UNCHANGED; the rest are written in concurrent
+ * BatchWriteItem calls of {@link ForecastStore#BATCH_WRITE_SIZE} items. The alias items mapping each query to its
+ * grid point are compared and written the same way. A failure affects only its own location.
+ */
+final class ForecastIngestion {
+
+    static final int MAX_LOCATIONS = 500;
+
+    // Bounds the concurrent upstream requests, Open-Meteo rate limits per client
+    private static final int MAX_IN_FLIGHT = 32;
+
+    private final ForecastCache forecastCache;
+
+    private final ForecastStore forecastStore;
+
+    // Created once per container; daemon threads do not keep a local JVM alive
+    private final ExecutorService executor = Executors.newFixedThreadPool(MAX_IN_FLIGHT, runnable -> {
+        Thread thread = new Thread(runnable, "forecast-ingestion");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    ForecastIngestion(ForecastCache forecastCache, ForecastStore forecastStore) {
+
+        this.forecastCache = forecastCache;
+        this.forecastStore = forecastStore;
+    }
+
+    /**
+     * @return one result per query, in input order
+     */
+    List<IngestionResult> ingest(List<ForecastQuery> queries) {
+
+        if (queries.isEmpty() || queries.size() > MAX_LOCATIONS) {
+            throw new IllegalArgumentException("locations must contain 1 to " + MAX_LOCATIONS + " entries");
+        }
+        List<CompletableFuture<Fetched>> fetches = new ArrayList<>();
+        for (ForecastQuery query : queries) {
+            fetches.add(CompletableFuture.supplyAsync(() -> fetch(query), executor));
+        }
+
+        IngestionResult[] results = new IngestionResult[queries.size()];
+        // By item id; BatchWriteItem rejects two puts of the same key
+        Map<String, Fetched> fetchedById = new LinkedHashMap<>();
+        // Alias items by id, with the queries they belong to
+        Map<String, Item> aliases = new LinkedHashMap<>();
+        Map<String, List<Integer>> aliasIndexes = new HashMap<>();
+        for (int i = 0; i < fetches.size(); i++) {
+            Fetched fetched = fetches.get(i).join();
+            if (fetched.error != null) {
+                results[i] = IngestionResult.failed(queries.get(i), fetched.error);
+                continue;
+            }
+            String aliasId = ForecastStore.aliasId(fetched.query);
+            aliases.putIfAbsent(aliasId, ForecastStore.aliasItem(fetched.query, fetched.forecast));
+            aliasIndexes.computeIfAbsent(aliasId, id -> new ArrayList<>()).add(i);
+            if (fetchedById.putIfAbsent(fetched.id, fetched) != null) {
+                results[i] = IngestionResult.unchanged(queries.get(i), fetched.id);
+            } else {
+                fetched.index = i;
+            }
+        }
+
+        Map<String, String> storedHashes;
+        try {
+            List<String> ids = new ArrayList<>(fetchedById.keySet());
+            ids.addAll(aliases.keySet());
+            storedHashes = forecastStore.storedHashes(ids);
+        } catch (Exception e) {
+            // Without the stored hashes everything is written, as before deduplication
+            System.err.println("Error while reading stored forecast hashes: " + e.getMessage());
+            storedHashes = Map.of();
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        List<Fetched> pending = new ArrayList<>();
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        for (Fetched fetched : fetchedById.values()) {
+            if (fetched.hash.equals(storedHashes.get(fetched.id))) {
+                results[fetched.index] = IngestionResult.unchanged(fetched.query, fetched.id);
+                continue;
+            }
+            pending.add(fetched);
+            if (pending.size() == ForecastStore.BATCH_WRITE_SIZE) {
+                writes.add(write(pending, results));
+                pending = new ArrayList<>();
+            }
+        }
+        if (!pending.isEmpty()) {
+            writes.add(write(pending, results));
+        }
+
+        List<CompletableFuture<Set<String>>> aliasWrites = new ArrayList<>();
+        List<Item> pendingAliases = new ArrayList<>();
+        for (Item alias : aliases.values()) {
+            if (alias.getString("gridLocation").equals(storedHashes.get(alias.getString("id")))) {
+                continue;
+            }
+            pendingAliases.add(alias);
+            if (pendingAliases.size() == ForecastStore.BATCH_WRITE_SIZE) {
+                aliasWrites.add(writeAliases(pendingAliases));
+                pendingAliases = new ArrayList<>();
+            }
+        }
+        if (!pendingAliases.isEmpty()) {
+            aliasWrites.add(writeAliases(pendingAliases));
+        }
+
+        CompletableFuture.allOf(writes.toArray(new CompletableFuture[0])).join();
+        // Without its alias a stored forecast cannot be read back as a series, so the location is retried
+        for (CompletableFuture<Set<String>> aliasWrite : aliasWrites) {
+            for (String aliasId : aliasWrite.join()) {
+                for (int index : aliasIndexes.get(aliasId)) {
+                    results[index] = IngestionResult.failed(queries.get(index), "location alias not written");
+                }
+            }
+        }
+        return List.of(results);
+    }
+
+    private Fetched fetch(ForecastQuery query) {
+
+        try {
+            Forecast forecast = forecastCache.getRevalidated(query);
+            return new Fetched(query, forecast, ForecastStore.itemId(forecast), ForecastStore.contentHash(forecast), null);
+        } catch (Exception e) {
+            System.err.println("Error while fetching forecast for " + query + ": " + e.getMessage());
+            return new Fetched(query, null, null, null, e.getMessage());
+        }
+    }
+
+    private CompletableFuture<Void> write(List<Fetched> batch, IngestionResult[] results) {
+
+        return CompletableFuture.runAsync(() -> {
+            List<Item> items = new ArrayList<>();
+            batch.forEach(fetched -> items.add(ForecastStore.toItem(fetched.id, fetched.hash, fetched.forecast)));
+            Set<String> unprocessed;
+            String error = null;
+            try {
+                unprocessed = forecastStore.putBatch(items);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                unprocessed = null;
+                error = "interrupted";
+            } catch (Exception e) {
+                System.err.println("Error while writing forecasts: " + e.getMessage());
+                unprocessed = null;
+                error = e.getMessage();
+            }
+            for (Fetched fetched : batch) {
+                if (unprocessed == null) {
+                    results[fetched.index] = IngestionResult.failed(fetched.query, error);
+                } else if (unprocessed.contains(fetched.id)) {
+                    results[fetched.index] = IngestionResult.failed(fetched.query, "write throttled");
+                } else {
+                    results[fetched.index] = IngestionResult.stored(fetched.query, fetched.id);
+                }
+            }
+        }, executor);
+    }
+
+    /**
+     * @return ids of the aliases that were not written
+     */
+    private CompletableFuture<Set<String>> writeAliases(List<Item> batch) {
+
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return forecastStore.putBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                System.err.println("Error while writing location aliases: " + e.getMessage());
+            }
+            Set<String> failed = new HashSet<>();
+            batch.forEach(alias -> failed.add(alias.getString("id")));
+            return failed;
+        }, executor);
+    }
+
+    private static final class Fetched {
+
+        private final ForecastQuery query;
+
+        private final Forecast forecast;
+
+        private final String id;
+
+        private final String hash;
+
+        private final String error;
+
+        private int index;
+
+        private Fetched(ForecastQuery query, Forecast forecast, String id, String hash, String error) {
+
+            this.query = query;
+            this.forecast = forecast;
+            this.id = id;
+            this.hash = hash;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.task09;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Coordinates and variables of one Open-Meteo forecast request. Two queries for the same point and the same
+ * variables, in any order, have the same {@link #cacheKey()}.
+ */
+final class ForecastQuery {
+
+    static final List<String> DEFAULT_CURRENT = List.of("temperature_2m", "wind_speed_10m");
+
+    static final List<String> DEFAULT_HOURLY = List.of("temperature_2m", "relative_humidity_2m", "wind_speed_10m");
+
+    private final double latitude;
+
+    private final double longitude;
+
+    private final List<String> current;
+
+    private final List<String> hourly;
+
+    ForecastQuery(double latitude, double longitude, List<String> current, List<String> hourly) {
+
+        if (!(latitude >= -90 && latitude <= 90) || !(longitude >= -180 && longitude <= 180)) {
+            throw new IllegalArgumentException("Invalid coordinates " + latitude + "," + longitude);
+        }
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.current = sorted(current);
+        this.hourly = sorted(hourly);
+    }
+
+    static ForecastQuery of(double latitude, double longitude) {
+
+        return new ForecastQuery(latitude, longitude, DEFAULT_CURRENT, DEFAULT_HOURLY);
+    }
+
+    double getLatitude() {
+        return latitude;
+    }
+
+    double getLongitude() {
+        return longitude;
+    }
+
+    List<String> getHourly() {
+        return hourly;
+    }
+
+    // Coordinates are rounded to 4 decimals (about 10 m), far below the resolution of the forecast models
+    String cacheKey() {
+
+        return String.format(Locale.ROOT, "%.4f,%.4f|current=%s|hourly=%s",
+                latitude, longitude, String.join(",", current), String.join(",", hourly));
+    }
+
+    URI uri(String baseUrl) {
+
+        StringBuilder uri = new StringBuilder(baseUrl)
+                .append(String.format(Locale.ROOT, "?latitude=%.4f&longitude=%.4f", latitude, longitude));
+        if (!current.isEmpty()) {
+            uri.append("&current=").append(String.join(",", current));
+        }
+        if (!hourly.isEmpty()) {
+            uri.append("&hourly=").append(String.join(",", hourly));
+        }
+        // Epoch seconds parse without date-time handling, see ForecastDeserializer
+        uri.append("&timeformat=unixtime");
+        return URI.create(uri.toString());
+    }
+
+    private static List<String> sorted(List<String> variables) {
+
+        List<String> copy = new ArrayList<>(variables);
+        for (String variable : copy) {
+            if (!variable.matches("[a-z0-9_]+")) {
+                throw new IllegalArgumentException("Invalid variable " + variable);
+            }
+        }
+        Collections.sort(copy);
+        return Collections.unmodifiableList(copy);
+    }
+
+    @Override
+    public String toString() {
+        return cacheKey();
+    }
+}
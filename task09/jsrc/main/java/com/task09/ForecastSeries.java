@@ -0,0 +1,198 @@
+package com.task09;
+
+import com.task09.weatherDTO.Forecast;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads one variable of a location's stored forecasts over a time range. Stored forecasts overlap, so every hour
+ * is taken from the newest forecast that covers it: a forecast contributes its points up to the start of the
+ * next one. Points are streamed in time order through an {@link Aggregator} that keeps only the current bucket,
+ * so no per-point objects are created.
+ */
+final class ForecastSeries {
+
+    // Dashboards plot a few hundred points; larger answers need a coarser resolution
+    static final int MAX_POINTS = 1000;
+
+    private static final long HOUR_SECONDS = 3600;
+
+    /**
+     * Forecasts of a location whose series may reach into [from, to), ordered by start time;
+     * {@link ForecastStore#readRange} in production, fixed forecasts in tests.
+     */
+    interface RangeReader {
+        List<Forecast> readRange(String location, long from, long to);
+    }
+
+    private final RangeReader rangeReader;
+
+    ForecastSeries(ForecastStore forecastStore) {
+
+        this(forecastStore::readRange);
+    }
+
+    ForecastSeries(RangeReader rangeReader) {
+
+        this.rangeReader = rangeReader;
+    }
+
+    /**
+     * @param location grid coordinates the items are stored under, see {@link ForecastStore#location(Forecast)}
+     * @param from     first epoch second, inclusive
+     * @param to       last epoch second, exclusive
+     * @return the series, or null if nothing is stored for the location in the range
+     */
+    SeriesResult query(String location, String variable, long from, long to, SeriesResolution resolution) {
+
+        if (from >= to) {
+            throw new IllegalArgumentException("from must be before to");
+        }
+        long step = Math.max(resolution.getBucketSeconds(), HOUR_SECONDS);
+        if ((to - from) / step > MAX_POINTS) {
+            throw new IllegalArgumentException("Range has more than " + MAX_POINTS + " " + resolution.name().toLowerCase(Locale.ROOT)
+                    + " points, use a shorter range or a coarser resolution");
+        }
+        List<Forecast> forecasts = rangeReader.readRange(location, from, to);
+        if (forecasts.isEmpty()) {
+            return null;
+        }
+
+        Forecast newest = forecasts.get(forecasts.size() - 1);
+        Aggregator aggregator = new Aggregator(resolution.getBucketSeconds(), newest.getUtcOffsetSeconds(), (int) Math.min((to - from) / step + 1, MAX_POINTS + 1));
+        String unit = null;
+        for (int i = 0; i < forecasts.size(); i++) {
+            Forecast forecast = forecasts.get(i);
+            long end = i + 1 < forecasts.size() ? Math.min(to, start(forecasts.get(i + 1))) : to;
+            float[] values = forecast.getHourly() == null ? null : forecast.getHourly().getSeries(variable);
+            if (values == null) {
+                continue;
+            }
+            if (forecast.getHourlyUnits() != null && forecast.getHourlyUnits().get(variable) != null) {
+                unit = forecast.getHourlyUnits().get(variable);
+            }
+            long[] time = forecast.getHourly().getTime();
+            int first = Arrays.binarySearch(time, from);
+            for (int j = first < 0 ? -first - 1 : first; j < time.length && time[j] < end; j++) {
+                aggregator.add(time[j], values[j]);
+            }
+        }
+        return aggregator.result(newest.getLatitude(), newest.getLongitude(), variable, unit, resolution);
+    }
+
+    private static long start(Forecast forecast) {
+
+        long[] time = forecast.getHourly() == null ? new long[0] : forecast.getHourly().getTime();
+        return time.length == 0 ? Long.MAX_VALUE : time[0];
+    }
+
+    /**
+     * Consumes points in ascending time order. With a bucket size of 0 every present point is kept as it is;
+     * otherwise min, max, sum and count of the open bucket are updated in place and appended to the output
+     * arrays when a point of a later bucket arrives. Buckets are aligned to local midnight via the UTC offset.
+     */
+    static final class Aggregator {
+
+        private final long bucketSeconds;
+
+        private final long offsetSeconds;
+
+        private long[] time;
+
+        private float[] min;
+
+        private float[] max;
+
+        private float[] mean;
+
+        private int[] count;
+
+        private int size;
+
+        private long bucket = Long.MIN_VALUE;
+
+        private float bucketMin;
+
+        private float bucketMax;
+
+        private double bucketSum;
+
+        private int bucketCount;
+
+        Aggregator(long bucketSeconds, long offsetSeconds, int expectedSize) {
+
+            this.bucketSeconds = bucketSeconds;
+            this.offsetSeconds = offsetSeconds;
+            this.time = new long[expectedSize];
+            this.min = new float[expectedSize];
+            this.max = new float[expectedSize];
+            this.mean = new float[expectedSize];
+            this.count = new int[expectedSize];
+        }
+
+        void add(long t, float value) {
+
+            if (Float.isNaN(value)) {
+                return;
+            }
+            if (bucketSeconds == 0) {
+                append(t, value, value, value, 1);
+                return;
+            }
+            long start = Math.floorDiv(t + offsetSeconds, bucketSeconds) * bucketSeconds - offsetSeconds;
+            if (start != bucket) {
+                flush();
+                bucket = start;
+                bucketMin = value;
+                bucketMax = value;
+                bucketSum = value;
+                bucketCount = 1;
+                return;
+            }
+            bucketMin = Math.min(bucketMin, value);
+            bucketMax = Math.max(bucketMax, value);
+            bucketSum += value;
+            bucketCount++;
+        }
+
+        SeriesResult result(double latitude, double longitude, String variable, String unit, SeriesResolution resolution) {
+
+            flush();
+            String name = resolution.name().toLowerCase(Locale.ROOT);
+            if (bucketSeconds == 0) {
+                return new SeriesResult(latitude, longitude, variable, unit, name,
+                        Arrays.copyOf(time, size), Arrays.copyOf(min, size), null, null, null, null);
+            }
+            return new SeriesResult(latitude, longitude, variable, unit, name, Arrays.copyOf(time, size), null,
+                    Arrays.copyOf(min, size), Arrays.copyOf(max, size), Arrays.copyOf(mean, size), Arrays.copyOf(count, size));
+        }
+
+        private void flush() {
+
+            if (bucketCount > 0) {
+                append(bucket, bucketMin, bucketMax, (float) (bucketSum / bucketCount), bucketCount);
+                bucketCount = 0;
+            }
+        }
+
+        private void append(long t, float minValue, float maxValue, float meanValue, int points) {
+
+            if (size == time.length) {
+                int capacity = Math.max(16, size * 2);
+                time = Arrays.copyOf(time, capacity);
+                min = Arrays.copyOf(min, capacity);
+                max = Arrays.copyOf(max, capacity);
+                mean = Arrays.copyOf(mean, capacity);
+                count = Arrays.copyOf(count, capacity);
+            }
+            time[size] = t;
+            min[size] = minValue;
+            max[size] = maxValue;
+            mean[size] = meanValue;
+            count[size] = points;
+            size++;
+        }
+    }
+}
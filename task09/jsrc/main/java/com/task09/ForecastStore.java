@@ -0,0 +1,352 @@
+package com.task09;
+
+import com.amazonaws.services.dynamodbv2.document.BatchGetItemOutcome;
+import com.amazonaws.services.dynamodbv2.document.BatchWriteItemOutcome;
+import com.amazonaws.services.dynamodbv2.document.DynamoDB;
+import com.amazonaws.services.dynamodbv2.document.Index;
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.document.TableKeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.document.TableWriteItems;
+import com.amazonaws.services.dynamodbv2.document.spec.GetItemSpec;
+import com.amazonaws.services.dynamodbv2.document.spec.QuerySpec;
+import com.amazonaws.services.dynamodbv2.document.utils.ValueMap;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.task09.weatherDTO.Forecast;
+import com.task09.weatherDTO.Hourly;
+import com.task09.weatherDTO.HourlyUnits;
+import com.task09.weatherDTO.SeriesStats;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Forecast items of the Weather table. The metadata and units stay a readable {@code forecast} map, while all
+ * hourly series are one {@code hourly} Binary attribute written by {@link HourlySeriesCodec}. Items from before
+ * the binary format, with time strings and a number list in {@code forecast.hourly}, are still read.
+ * <p>
+ * Items are keyed by location and forecast start ({@link #itemId(Forecast)}), and carry a {@code contentHash}
+ * of everything but the generation time. Writing a forecast whose hash is already stored under its key is
+ * skipped, so re-ingesting unchanged data costs a read instead of a write.
+ * <p>
+ * {@code location} and {@code start} repeat the key parts as attributes for {@link #LOCATION_INDEX}, which
+ * finds a location's forecasts by start time.
+ * <p>
+ * Open-Meteo snaps the requested coordinates to its model grid, so every ingested query also leaves an alias item
+ * ({@link #aliasId(ForecastQuery)}) whose {@code gridLocation} is the {@code location} its forecasts are stored
+ * under. Series reads resolve the grid point from it without calling Open-Meteo.
+ */
+final class ForecastStore {
+
+    static final int BATCH_WRITE_SIZE = 25;
+
+    static final String LOCATION_INDEX = "location-index";
+
+    // Open-Meteo serves at most 16 forecast days, so an older start cannot reach into a queried range
+    private static final long MAX_FORECAST_SECONDS = 16 * 24 * 3600;
+
+    private static final int BATCH_GET_SIZE = 100;
+
+    private static final int MAX_BATCH_ATTEMPTS = 5;
+
+    private static final long BASE_BACKOFF_MILLIS = 50;
+
+    private final DynamoDB dynamoDB;
+
+    private final String tableName;
+
+    private final Table table;
+
+    ForecastStore(DynamoDB dynamoDB, String tableName) {
+        this.dynamoDB = dynamoDB;
+        this.tableName = tableName;
+        this.table = dynamoDB.getTable(tableName);
+    }
+
+    /**
+     * Location (as returned by Open-Meteo, snapped to the model grid) plus the first hourly time. Open-Meteo does
+     * not report model runs; a newer run of the same forecast window replaces the older one under the same key.
+     */
+    static String itemId(Forecast forecast) {
+
+        return "forecast#" + location(forecast) + "#" + start(forecast);
+    }
+
+    static String aliasId(ForecastQuery query) {
+
+        return "forecast-location#" + String.format(Locale.ROOT, "%.4f,%.4f", query.getLatitude(), query.getLongitude());
+    }
+
+    // No start attribute, so alias items stay out of LOCATION_INDEX
+    static Item aliasItem(ForecastQuery query, Forecast forecast) {
+
+        return new Item()
+                .withPrimaryKey("id", aliasId(query))
+                .withString("gridLocation", location(forecast));
+    }
+
+    static String location(Forecast forecast) {
+
+        return String.format(Locale.ROOT, "%.4f,%.4f", forecast.getLatitude(), forecast.getLongitude());
+    }
+
+    private static long start(Forecast forecast) {
+
+        return forecast.getHourly() == null || forecast.getHourly().getTime().length == 0
+                ? 0 : forecast.getHourly().getTime()[0];
+    }
+
+    // SHA-256 over the stored content except generationtime_ms, which differs on every upstream call
+    static String contentHash(Forecast forecast) {
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeDouble(forecast.getLatitude());
+            out.writeDouble(forecast.getLongitude());
+            out.writeDouble(forecast.getElevation());
+            out.writeInt(forecast.getUtcOffsetSeconds());
+            out.writeUTF(String.valueOf(forecast.getTimezone()));
+            out.writeUTF(String.valueOf(forecast.getTimezoneAbbreviation()));
+            out.writeUTF(forecast.getHourlyUnits() == null ? "" : new TreeMap<>(forecast.getHourlyUnits().getUnits()).toString());
+            if (forecast.getHourly() != null) {
+                out.write(HourlySeriesCodec.encode(forecast.getHourly()));
+            }
+            out.flush();
+            StringBuilder hash = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes.toByteArray())) {
+                hash.append(String.format("%02x", b));
+            }
+            return hash.toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Writes the forecast unless the same content is already stored under its key, and the alias of the query
+     * unless it already points to the forecast's grid location.
+     *
+     * @return whether the forecast was written
+     */
+    boolean put(ForecastQuery query, Forecast forecast) throws InterruptedException {
+
+        String id = itemId(forecast);
+        String hash = contentHash(forecast);
+        String aliasId = aliasId(query);
+        Map<String, String> stored = storedHashes(List.of(id, aliasId));
+        if (!location(forecast).equals(stored.get(aliasId))) {
+            table.putItem(aliasItem(query, forecast));
+        }
+        if (hash.equals(stored.get(id))) {
+            System.out.println("Forecast " + id + " unchanged, not written");
+            return false;
+        }
+        table.putItem(toItem(id, hash, forecast));
+        return true;
+    }
+
+    /**
+     * The grid location the query's forecasts are stored under, or null if the coordinates were never ingested.
+     */
+    String gridLocation(ForecastQuery query) {
+
+        Item alias = table.getItem(new GetItemSpec().withPrimaryKey("id", aliasId(query)).withProjectionExpression("gridLocation"));
+        return alias == null ? null : alias.getString("gridLocation");
+    }
+
+    /**
+     * Stored content hashes by item id, read with eventually consistent BatchGetItem calls; for alias items the
+     * grid location they point to. Ids without an item are absent from the result.
+     */
+    Map<String, String> storedHashes(Collection<String> ids) throws InterruptedException {
+
+        Map<String, String> hashes = new HashMap<>();
+        List<String> pending = new ArrayList<>(ids);
+        for (int from = 0; from < pending.size(); from += BATCH_GET_SIZE) {
+            Object[] keys = pending.subList(from, Math.min(from + BATCH_GET_SIZE, pending.size())).toArray();
+            BatchGetItemOutcome outcome = dynamoDB.batchGetItem(new TableKeysAndAttributes(tableName)
+                    .addHashOnlyPrimaryKeys("id", keys)
+                    .withProjectionExpression("id, contentHash, gridLocation"));
+            collectHashes(outcome, hashes);
+            Map<String, KeysAndAttributes> unprocessed = outcome.getUnprocessedKeys();
+            for (int attempt = 1; !unprocessed.isEmpty(); attempt++) {
+                if (attempt == MAX_BATCH_ATTEMPTS) {
+                    // Unknown hashes only cost a redundant write
+                    System.err.println("Could not read " + unprocessed.get(tableName).getKeys().size() + " stored hashes");
+                    break;
+                }
+                backoff(attempt);
+                outcome = dynamoDB.batchGetItemUnprocessed(unprocessed);
+                collectHashes(outcome, hashes);
+                unprocessed = outcome.getUnprocessedKeys();
+            }
+        }
+        return hashes;
+    }
+
+    private void collectHashes(BatchGetItemOutcome outcome, Map<String, String> hashes) {
+
+        for (Item item : outcome.getTableItems().getOrDefault(tableName, new ArrayList<>())) {
+            if (item.isPresent("contentHash")) {
+                hashes.put(item.getString("id"), item.getString("contentHash"));
+            } else if (item.isPresent("gridLocation")) {
+                hashes.put(item.getString("id"), item.getString("gridLocation"));
+            }
+        }
+    }
+
+    /**
+     * Forecasts of the location whose hourly series may reach into [from, to), ordered by start time.
+     */
+    List<Forecast> readRange(String location, long from, long to) {
+
+        Index index = table.getIndex(LOCATION_INDEX);
+        List<Forecast> forecasts = new ArrayList<>();
+        for (Item item : index.query(new QuerySpec()
+                .withKeyConditionExpression("#location = :location AND #start BETWEEN :from AND :to")
+                .withNameMap(Map.of("#location", "location", "#start", "start"))
+                .withValueMap(new ValueMap()
+                        .withString(":location", location)
+                        .withLong(":from", from - MAX_FORECAST_SECONDS)
+                        .withLong(":to", to - 1))
+                .withScanIndexForward(true))) {
+            forecasts.add(fromItem(item));
+        }
+        return forecasts;
+    }
+
+    /**
+     * Writes up to {@link #BATCH_WRITE_SIZE} items with one BatchWriteItem call, retrying unprocessed items
+     * with jittered backoff.
+     *
+     * @return ids of the items that were still unprocessed after the last attempt
+     */
+    Set<String> putBatch(List<Item> items) throws InterruptedException {
+
+        if (items.size() > BATCH_WRITE_SIZE) {
+            throw new IllegalArgumentException("At most " + BATCH_WRITE_SIZE + " items per batch");
+        }
+        BatchWriteItemOutcome outcome = dynamoDB.batchWriteItem(new TableWriteItems(tableName).withItemsToPut(items));
+        for (int attempt = 1; attempt < MAX_BATCH_ATTEMPTS && !outcome.getUnprocessedItems().isEmpty(); attempt++) {
+            backoff(attempt);
+            outcome = dynamoDB.batchWriteItemUnprocessed(outcome.getUnprocessedItems());
+        }
+        Set<String> unprocessed = new HashSet<>();
+        for (WriteRequest request : outcome.getUnprocessedItems().getOrDefault(tableName, new ArrayList<>())) {
+            unprocessed.add(request.getPutRequest().getItem().get("id").getS());
+        }
+        return unprocessed;
+    }
+
+    private static void backoff(int attempt) throws InterruptedException {
+
+        long ceiling = BASE_BACKOFF_MILLIS << attempt;
+        Thread.sleep(ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1));
+    }
+
+    static Item toItem(String id, String contentHash, Forecast forecast) {
+
+        return withForecast(new Item()
+                .withPrimaryKey("id", id)
+                .withString("contentHash", contentHash)
+                .withString("location", location(forecast))
+                .withLong("start", start(forecast)), forecast);
+    }
+
+    /**
+     * Adds the {@code forecast} map and the {@code hourly} Binary attribute that {@link #fromItem(Item)} reads.
+     */
+    static Item withForecast(Item item, Forecast forecast) {
+
+        Map<String, Object> forecastMap = new HashMap<>();
+        forecastMap.put("elevation", forecast.getElevation());
+        forecastMap.put("generationtime_ms", forecast.getGenerationTimeMs());
+        forecastMap.put("latitude", forecast.getLatitude());
+        forecastMap.put("longitude", forecast.getLongitude());
+        forecastMap.put("timezone", forecast.getTimezone());
+        forecastMap.put("timezone_abbreviation", forecast.getTimezoneAbbreviation());
+        forecastMap.put("utc_offset_seconds", forecast.getUtcOffsetSeconds());
+        if (forecast.getHourlyUnits() != null) {
+            forecastMap.put("hourly_units", forecast.getHourlyUnits().getUnits());
+        }
+
+        item.withMap("forecast", forecastMap);
+        if (forecast.getHourly() != null) {
+            item.withBinary("hourly", HourlySeriesCodec.encode(forecast.getHourly()));
+        }
+        return item;
+    }
+
+    @SuppressWarnings("unchecked")
+    static Forecast fromItem(Item item) {
+
+        Map<String, Object> forecastMap = item.getMap("forecast");
+        Forecast forecast = new Forecast();
+        forecast.setElevation(number(forecastMap.get("elevation")));
+        forecast.setGenerationTimeMs(number(forecastMap.get("generationtime_ms")));
+        forecast.setLatitude(number(forecastMap.get("latitude")));
+        forecast.setLongitude(number(forecastMap.get("longitude")));
+        forecast.setTimezone((String) forecastMap.get("timezone"));
+        forecast.setTimezoneAbbreviation((String) forecastMap.get("timezone_abbreviation"));
+        forecast.setUtcOffsetSeconds((int) number(forecastMap.get("utc_offset_seconds")));
+        if (forecastMap.get("hourly_units") != null) {
+            forecast.setHourlyUnits(new HourlyUnits((Map<String, String>) forecastMap.get("hourly_units")));
+        }
+        if (item.isPresent("hourly")) {
+            forecast.setHourly(HourlySeriesCodec.decode(item.getBinary("hourly")));
+        } else if (forecastMap.get("hourly") != null) {
+            forecast.setHourly(legacyHourly((Map<String, Object>) forecastMap.get("hourly"), forecast.getUtcOffsetSeconds()));
+        }
+        return forecast;
+    }
+
+    // forecast.hourly of the old format: local time strings and number lists
+    @SuppressWarnings("unchecked")
+    private static Hourly legacyHourly(Map<String, Object> hourlyMap, int utcOffsetSeconds) {
+
+        List<String> times = (List<String>) hourlyMap.get("time");
+        long[] time = new long[times.size()];
+        for (int i = 0; i < time.length; i++) {
+            time[i] = LocalDateTime.parse(times.get(i)).toEpochSecond(ZoneOffset.UTC) - utcOffsetSeconds;
+        }
+        Map<String, float[]> series = new HashMap<>();
+        Map<String, SeriesStats> stats = new HashMap<>();
+        for (Map.Entry<String, Object> entry : hourlyMap.entrySet()) {
+            if (entry.getKey().equals("time")) {
+                continue;
+            }
+            List<Number> numbers = (List<Number>) entry.getValue();
+            float[] values = new float[numbers.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = numbers.get(i) == null ? Float.NaN : numbers.get(i).floatValue();
+            }
+            series.put(entry.getKey(), values);
+            stats.put(entry.getKey(), SeriesStats.of(values));
+        }
+        return new Hourly(time, series, stats);
+    }
+
+    private static double number(Object value) {
+        return value == null ? Double.NaN : ((Number) value).doubleValue();
+    }
+}
@@ -0,0 +1,305 @@
+package com.task09;
+
+import com.task09.weatherDTO.Hourly;
+import com.task09.weatherDTO.SeriesStats;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Binary form of {@link Hourly} for the Weather table: one version byte followed by the deflated payload
+ * <pre>
+ * count                     varint
+ * time mode                 byte, 0 = start + step, 1 = first time + deltas
+ * times                     zigzag varints: start, step | first, count - 1 deltas
+ * variable count            varint
+ * per variable, by name:
+ *   name                    varint length + UTF-8
+ *   decimals                byte, values are stored as round(value * 10^decimals)
+ *   missing                 byte 0, or 1 followed by a bitmap of the NaN positions
+ *   values                  zigzag varint deltas between consecutive present quantized values
+ * </pre>
+ * Decimals are the fewest (up to {@link #MAX_DECIMALS}) that give back every float exactly, so Open-Meteo's
+ * one-decimal values are lossless; values with more precision are rounded to {@link #MAX_DECIMALS} decimals.
+ */
+final class HourlySeriesCodec {
+
+    private static final byte VERSION = 1;
+
+    private static final int MAX_DECIMALS = 4;
+
+    private static final byte REGULAR_TIMES = 0;
+
+    private static final byte EXPLICIT_TIMES = 1;
+
+    // Sanity limit for counts read from a payload: more than a century of hourly points
+    private static final int MAX_LENGTH = 1 << 20;
+
+    private HourlySeriesCodec() {
+    }
+
+    static byte[] encode(Hourly hourly) {
+
+        long[] time = hourly.getTime();
+        Output out = new Output();
+        out.varint(time.length);
+        long step = time.length > 1 ? time[1] - time[0] : 0;
+        if (isRegular(time, step)) {
+            out.bytes.write(REGULAR_TIMES);
+            out.zigzag(time.length == 0 ? 0 : time[0]);
+            out.zigzag(step);
+        } else {
+            out.bytes.write(EXPLICIT_TIMES);
+            long previous = 0;
+            for (long t : time) {
+                out.zigzag(t - previous);
+                previous = t;
+            }
+        }
+
+        List<String> variables = new ArrayList<>(hourly.getSeries().keySet());
+        Collections.sort(variables);
+        out.varint(variables.size());
+        for (String variable : variables) {
+            float[] values = hourly.getSeries(variable);
+            if (values.length != time.length) {
+                throw new IllegalArgumentException("Hourly " + variable + " has " + values.length + " values for " + time.length + " times");
+            }
+            byte[] name = variable.getBytes(StandardCharsets.UTF_8);
+            out.varint(name.length);
+            out.bytes.write(name, 0, name.length);
+            int decimals = decimals(values);
+            out.bytes.write(decimals);
+            writeMissing(out, values);
+            double scale = Math.pow(10, decimals);
+            long previous = 0;
+            for (float value : values) {
+                if (!Float.isNaN(value)) {
+                    long quantized = Math.round(value * scale);
+                    out.zigzag(quantized - previous);
+                    previous = quantized;
+                }
+            }
+        }
+        return compress(out.bytes.toByteArray());
+    }
+
+    /**
+     * @throws IllegalArgumentException if {@code encoded} is not a complete payload of a supported version
+     */
+    static Hourly decode(byte[] encoded) {
+
+        if (encoded.length == 0 || encoded[0] != VERSION) {
+            throw new IllegalArgumentException("Unsupported hourly series format " + (encoded.length == 0 ? "(empty)" : encoded[0]));
+        }
+        try {
+            return read(new Input(decompress(encoded)));
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated hourly series payload", e);
+        }
+    }
+
+    private static Hourly read(Input in) {
+
+        int count = in.length();
+        long[] time = new long[count];
+        byte timeMode = in.buffer.get();
+        if (timeMode == REGULAR_TIMES) {
+            long start = in.zigzag();
+            long step = in.zigzag();
+            for (int i = 0; i < count; i++) {
+                time[i] = start + i * step;
+            }
+        } else if (timeMode == EXPLICIT_TIMES) {
+            long previous = 0;
+            for (int i = 0; i < count; i++) {
+                previous += in.zigzag();
+                time[i] = previous;
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown time mode " + timeMode);
+        }
+
+        int variableCount = in.length();
+        Map<String, float[]> series = new HashMap<>();
+        Map<String, SeriesStats> stats = new HashMap<>();
+        for (int v = 0; v < variableCount; v++) {
+            byte[] name = new byte[in.length()];
+            in.buffer.get(name);
+            int decimals = in.buffer.get();
+            if (decimals < 0 || decimals > MAX_DECIMALS) {
+                throw new IllegalArgumentException("Invalid decimals " + decimals + " in hourly series payload");
+            }
+            byte[] missing = in.buffer.get() == 0 ? null : new byte[(count + 7) / 8];
+            if (missing != null) {
+                in.buffer.get(missing);
+            }
+            double scale = Math.pow(10, decimals);
+            float[] values = new float[count];
+            long previous = 0;
+            for (int i = 0; i < count; i++) {
+                if (missing != null && (missing[i / 8] & (1 << (i % 8))) != 0) {
+                    values[i] = Float.NaN;
+                } else {
+                    previous += in.zigzag();
+                    values[i] = (float) (previous / scale);
+                }
+            }
+            String variable = new String(name, StandardCharsets.UTF_8);
+            series.put(variable, values);
+            stats.put(variable, SeriesStats.of(values));
+        }
+        return new Hourly(time, series, stats);
+    }
+
+    private static boolean isRegular(long[] time, long step) {
+
+        for (int i = 1; i < time.length; i++) {
+            if (time[i] - time[i - 1] != step) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int decimals(float[] values) {
+
+        for (int decimals = 0; decimals < MAX_DECIMALS; decimals++) {
+            double scale = Math.pow(10, decimals);
+            boolean exact = true;
+            for (float value : values) {
+                if (!Float.isNaN(value) && (float) (Math.round(value * scale) / scale) != value) {
+                    exact = false;
+                    break;
+                }
+            }
+            if (exact) {
+                return decimals;
+            }
+        }
+        return MAX_DECIMALS;
+    }
+
+    private static void writeMissing(Output out, float[] values) {
+
+        byte[] missing = new byte[(values.length + 7) / 8];
+        boolean any = false;
+        for (int i = 0; i < values.length; i++) {
+            if (Float.isNaN(values[i])) {
+                missing[i / 8] |= (byte) (1 << (i % 8));
+                any = true;
+            }
+        }
+        out.bytes.write(any ? 1 : 0);
+        if (any) {
+            out.bytes.write(missing, 0, missing.length);
+        }
+    }
+
+    private static byte[] compress(byte[] payload) {
+
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(payload);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length / 2 + 16);
+            out.write(VERSION);
+            byte[] chunk = new byte[1024];
+            while (!deflater.finished()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] decompress(byte[] encoded) {
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(encoded, 1, encoded.length - 1);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(encoded.length * 4);
+            byte[] chunk = new byte[1024];
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(chunk);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Truncated hourly series payload");
+                }
+                out.write(chunk, 0, inflated);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupt hourly series payload", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static final class Output {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        void varint(long value) {
+
+            while ((value & ~0x7FL) != 0) {
+                bytes.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            bytes.write((int) value);
+        }
+
+        // Small negative deltas become small unsigned numbers
+        void zigzag(long value) {
+            varint((value << 1) ^ (value >> 63));
+        }
+    }
+
+    private static final class Input {
+
+        private final ByteBuffer buffer;
+
+        Input(byte[] payload) {
+            this.buffer = ByteBuffer.wrap(payload);
+        }
+
+        long varint() {
+
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = buffer.get();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint in hourly series payload");
+        }
+
+        // A count or size, checked before anything is allocated for it
+        int length() {
+
+            long value = varint();
+            if (value < 0 || value > MAX_LENGTH) {
+                throw new IllegalArgumentException("Invalid length " + value + " in hourly series payload");
+            }
+            return (int) value;
+        }
+
+        long zigzag() {
+
+            long value = varint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+}
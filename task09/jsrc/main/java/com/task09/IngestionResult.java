@@ -0,0 +1,32 @@
+package com.task09;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Outcome of one location of a multi-location run: STORED or UNCHANGED (already stored) with the item id,
+ * or FAILED with the error.
+ */
+@Getter
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class IngestionResult {
+    private double latitude;
+    private double longitude;
+    private String status;
+    private String id;
+    private String error;
+
+    static IngestionResult stored(ForecastQuery query, String id) {
+        return new IngestionResult(query.getLatitude(), query.getLongitude(), "STORED", id, null);
+    }
+
+    static IngestionResult unchanged(ForecastQuery query, String id) {
+        return new IngestionResult(query.getLatitude(), query.getLongitude(), "UNCHANGED", id, null);
+    }
+
+    static IngestionResult failed(ForecastQuery query, String error) {
+        return new IngestionResult(query.getLatitude(), query.getLongitude(), "FAILED", null, error);
+    }
+}
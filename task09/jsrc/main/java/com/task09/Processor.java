@@ -2,12 +2,12 @@ package com.task09;
 
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
 import com.amazonaws.services.dynamodbv2.document.DynamoDB;
-import com.amazonaws.services.dynamodbv2.document.Item;
-import com.amazonaws.services.dynamodbv2.document.Table;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.syndicate.deployment.annotations.environment.EnvironmentVariable;
 import com.syndicate.deployment.annotations.environment.EnvironmentVariables;
@@ -18,13 +18,18 @@ import com.syndicate.deployment.model.lambda.url.AuthType;
 import com.syndicate.deployment.model.lambda.url.InvokeMode;
 import com.task09.weatherDTO.Forecast;
 
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.HashMap;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
-import java.util.UUID;
 
 @LambdaHandler(
         lambdaName = "processor",
@@ -42,18 +47,59 @@ import java.util.UUID;
 )
 public class Processor implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayV2HTTPResponse> {
 
+    // Used when the request has no coordinates
+    private static final double DEFAULT_LATITUDE = 52.52;
+
+    private static final double DEFAULT_LONGITUDE = 13.41;
+
+    // Series queries without from/to cover the next week
+    private static final Duration DEFAULT_SERIES_RANGE = Duration.ofDays(7);
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
     private final DynamoDB dynamoDB = new DynamoDB(AmazonDynamoDBClientBuilder.defaultClient());
     private final String tableName = System.getenv("target_table");
+    private final ForecastStore forecastStore = new ForecastStore(dynamoDB, tableName);
+    private final ForecastCache forecastCache = new ForecastCache(ForecastCache.OPEN_METEO_URL, dynamoDB.getTable(tableName));
+    private final ForecastIngestion forecastIngestion = new ForecastIngestion(forecastCache, forecastStore);
+    private final ForecastSeries forecastSeries = new ForecastSeries(forecastStore);
 
     @Override
     public APIGatewayV2HTTPResponse handleRequest(APIGatewayProxyRequestEvent request, Context context) {
         try {
 
-            Forecast forecast = new ObjectMapper().readValue(fetchWeatherData(), Forecast.class);
+            // {"locations": [{"latitude": ..., "longitude": ...}, ...]} ingests many sites in one run
+            String body = requestBody(request);
+            if (body != null) {
+                List<IngestionResult> results = forecastIngestion.ingest(locationQueries(body));
+                return createJsonResponse(200, Map.of("locations", results));
+            }
+
+            // ?variable=...&from=...&to=...&resolution=raw|hourly|daily reads the stored series back
+            Map<String, String> params = queryParams(request);
+            if (params.containsKey("variable")) {
+                return seriesResponse(params);
+            }
 
-            storeForecastData(forecast);
+            ForecastQuery query = forecastQuery(params);
+            Forecast forecast = forecastCache.get(query);
+
+            if (!forecastStore.put(query, forecast)) {
+                return createResponse(200, "Weather data unchanged, nothing stored.");
+            }
 
             return createResponse(200, "Weather data successfully processed and stored.");
+        } catch (IllegalArgumentException e) {
+
+            return createResponse(400, "Bad Request: " + e.getMessage());
+        } catch (JsonProcessingException e) {
+
+            return createResponse(400, "Bad Request: invalid JSON body");
+        } catch (IOException e) {
+
+            // Upstream failed and nothing usable is cached
+            context.getLogger().log("Weather service unavailable: " + e.getMessage());
+            return createResponse(503, "Weather service unavailable: " + e.getMessage());
         } catch (Exception e) {
 
             context.getLogger().log("Error: " + e.getMessage());
@@ -61,50 +107,101 @@ public class Processor implements RequestHandler<APIGatewayProxyRequestEvent, AP
         }
     }
 
-    private String fetchWeatherData() throws Exception {
+    private APIGatewayV2HTTPResponse seriesResponse(Map<String, String> params) throws IOException {
+
+        // Stored items are keyed by the grid point Open-Meteo snapped the coordinates to, recorded at ingestion
+        ForecastQuery query = forecastQuery(params);
+        String location = forecastStore.gridLocation(query);
+        if (location == null) {
+            return createResponse(404, "No forecast ingested for " + query.getLatitude() + "," + query.getLongitude());
+        }
+        long from = instant(params, "from", Instant.now().truncatedTo(ChronoUnit.HOURS).getEpochSecond());
+        long to = instant(params, "to", from + DEFAULT_SERIES_RANGE.getSeconds());
+        SeriesResolution resolution = SeriesResolution.of(params.getOrDefault("resolution", "raw"));
+        SeriesResult series = forecastSeries.query(location, params.get("variable"), from, to, resolution);
+        if (series == null) {
+            return createResponse(404, "No stored forecast for " + location + " in the requested range");
+        }
+        return createJsonResponse(200, series);
+    }
+
+    private Map<String, String> queryParams(APIGatewayProxyRequestEvent request) {
+
+        return request.getQueryStringParameters() == null ? Map.of() : request.getQueryStringParameters();
+    }
+
+    private ForecastQuery forecastQuery(Map<String, String> params) {
 
-        URL url = new URL("https://api.open-meteo.com/v1/forecast?latitude=52.52&longitude=13.41&current=temperature_2m,wind_speed_10m&hourly=temperature_2m,relative_humidity_2m,wind_speed_10m");
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("GET");
+        return ForecastQuery.of(coordinate(params, "latitude", DEFAULT_LATITUDE), coordinate(params, "longitude", DEFAULT_LONGITUDE));
+    }
 
-        try (Scanner scanner = new Scanner(new InputStreamReader(conn.getInputStream()))) {
+    private String requestBody(APIGatewayProxyRequestEvent request) {
 
-            StringBuilder response = new StringBuilder();
-            while (scanner.hasNext()) response.append(scanner.nextLine());
-            return response.toString();
+        String body = request.getBody();
+        if (body == null || body.isBlank()) {
+            return null;
         }
+        return Boolean.TRUE.equals(request.getIsBase64Encoded())
+                ? new String(Base64.getDecoder().decode(body), StandardCharsets.UTF_8)
+                : body;
     }
 
-    private void storeForecastData(Forecast forecast) {
-
-        Table table = dynamoDB.getTable(tableName);
-        String id = UUID.randomUUID().toString();
-
-        Map<String, Object> forecastMap = new HashMap<>();
-        forecastMap.put("elevation", forecast.getElevation());
-        forecastMap.put("generationtime_ms", forecast.getGenerationTimeMs());
-        forecastMap.put("latitude", forecast.getLatitude());
-        forecastMap.put("longitude", forecast.getLongitude());
-        forecastMap.put("timezone", forecast.getTimezone());
-        forecastMap.put("timezone_abbreviation", forecast.getTimezoneAbbreviation());
-        forecastMap.put("utc_offset_seconds", forecast.getUtcOffsetSeconds());
-
-        // Add hourly data
-        forecastMap.put("hourly", Map.of(
-                "time", forecast.getHourly().getTime(),
-                "temperature_2m", forecast.getHourly().getTemperature2mList()
-        ));
-
-        // Add hourly units
-        forecastMap.put("hourly_units", Map.of(
-                "time", forecast.getHourlyUnits().getTime(),
-                "temperature_2m", forecast.getHourlyUnits().getTemperature2mString()
-        ));
-
-        table
-                .putItem(new Item()
-                        .withPrimaryKey("id", id)
-                        .withMap("forecast", forecastMap));
+    private List<ForecastQuery> locationQueries(String body) throws IOException {
+
+        JsonNode locations = OBJECT_MAPPER.readTree(body).path("locations");
+        if (!locations.isArray()) {
+            throw new IllegalArgumentException("locations must be an array");
+        }
+        List<ForecastQuery> queries = new ArrayList<>(locations.size());
+        for (JsonNode location : locations) {
+            if (!location.path("latitude").isNumber() || !location.path("longitude").isNumber()) {
+                throw new IllegalArgumentException("every location needs numeric latitude and longitude");
+            }
+            queries.add(ForecastQuery.of(location.path("latitude").asDouble(), location.path("longitude").asDouble()));
+        }
+        return queries;
+    }
+
+    private double coordinate(Map<String, String> params, String name, double defaultValue) {
+
+        String value = params.get(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a number");
+        }
+    }
+
+    // Epoch seconds, an ISO instant (2024-05-01T06:00:00Z) or an ISO date, taken as UTC midnight
+    private long instant(Map<String, String> params, String name, long defaultValue) {
+
+        String value = params.get(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            if (value.chars().allMatch(Character::isDigit)) {
+                return Long.parseLong(value);
+            }
+            if (value.length() == 10) {
+                return LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+            }
+            return Instant.parse(value).getEpochSecond();
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new IllegalArgumentException(name + " must be epoch seconds, an ISO instant or an ISO date");
+        }
+    }
+
+    private APIGatewayV2HTTPResponse createJsonResponse(int statusCode, Object body) throws IOException {
+
+        return APIGatewayV2HTTPResponse.builder()
+                .withStatusCode(statusCode)
+                .withHeaders(Map.of("Content-Type", "application/json"))
+                .withBody(OBJECT_MAPPER.writeValueAsString(body))
+                .build();
     }
 
     private APIGatewayV2HTTPResponse createResponse(int statusCode, String body) {
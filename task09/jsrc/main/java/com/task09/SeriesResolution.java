@@ -0,0 +1,32 @@
+package com.task09;
+
+import java.util.Locale;
+
+/**
+ * Resolution of a series query: the stored hourly points as they are, or min/max/mean per hour or per day.
+ */
+enum SeriesResolution {
+
+    RAW(0),
+    HOURLY(3600),
+    DAILY(86400);
+
+    private final long bucketSeconds;
+
+    SeriesResolution(long bucketSeconds) {
+        this.bucketSeconds = bucketSeconds;
+    }
+
+    long getBucketSeconds() {
+        return bucketSeconds;
+    }
+
+    static SeriesResolution of(String value) {
+
+        try {
+            return valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("resolution must be raw, hourly or daily");
+        }
+    }
+}
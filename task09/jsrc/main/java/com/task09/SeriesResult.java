@@ -0,0 +1,27 @@
+package com.task09;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Series of one variable at one location, as parallel arrays. {@code time} is epoch seconds: the point itself
+ * for raw series, the start of the bucket otherwise. Raw series carry {@code value}; aggregated series carry
+ * {@code min}, {@code max}, {@code mean} and the number of points in each bucket. Missing values are left out.
+ */
+@Getter
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SeriesResult {
+    private double latitude;
+    private double longitude;
+    private String variable;
+    private String unit;
+    private String resolution;
+    private long[] time;
+    private float[] value;
+    private float[] min;
+    private float[] max;
+    private float[] mean;
+    private int[] count;
+}
@@ -1,6 +1,6 @@
 package com.task09.weatherDTO;
 
-import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -11,15 +11,15 @@ import lombok.Setter;
 @Setter
 @AllArgsConstructor
 @NoArgsConstructor
-@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonDeserialize(using = ForecastDeserializer.class)
 public class Forecast {
-    private Number latitude;
-    private Number longitude;
-    private Number generationTimeMs;
-    private Number utcOffsetSeconds;
+    private double latitude;
+    private double longitude;
+    private double generationTimeMs;
+    private int utcOffsetSeconds;
     private String timezone;
     private String timezoneAbbreviation;
-    private Number elevation;
+    private double elevation;
     private HourlyUnits hourlyUnits;
     private Hourly hourly;
 
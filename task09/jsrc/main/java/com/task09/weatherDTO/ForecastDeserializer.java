@@ -0,0 +1,225 @@
+package com.task09.weatherDTO;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads an Open-Meteo forecast token by token straight into primitive arrays, so no boxed list is built
+ * for the hourly data, and computes the {@link SeriesStats} of every hourly variable on the way.
+ * Times may come as epoch seconds ({@code timeformat=unixtime}) or as ISO local date-times, which are
+ * converted to UTC with {@code utc_offset_seconds}. Unknown fields, {@code current} included, are skipped.
+ */
+public class ForecastDeserializer extends StdDeserializer<Forecast> {
+
+    private static final int INITIAL_CAPACITY = 168;
+
+    public ForecastDeserializer() {
+        super(Forecast.class);
+    }
+
+    @Override
+    public Forecast deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+
+        expect(parser, JsonToken.START_OBJECT);
+        Forecast forecast = new Forecast();
+        HourlyReader hourly = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "latitude":
+                    forecast.setLatitude(parser.getDoubleValue());
+                    break;
+                case "longitude":
+                    forecast.setLongitude(parser.getDoubleValue());
+                    break;
+                case "generationtime_ms":
+                    forecast.setGenerationTimeMs(parser.getDoubleValue());
+                    break;
+                case "utc_offset_seconds":
+                    forecast.setUtcOffsetSeconds(parser.getIntValue());
+                    break;
+                case "timezone":
+                    forecast.setTimezone(parser.getValueAsString());
+                    break;
+                case "timezone_abbreviation":
+                    forecast.setTimezoneAbbreviation(parser.getValueAsString());
+                    break;
+                case "elevation":
+                    forecast.setElevation(parser.getDoubleValue());
+                    break;
+                case "hourly_units":
+                    forecast.setHourlyUnits(new HourlyUnits(readUnits(parser)));
+                    break;
+                case "hourly":
+                    hourly = readHourly(parser);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        if (hourly != null) {
+            // The offset may follow the hourly block, so local times are converted only at the end
+            forecast.setHourly(hourly.build(parser, forecast.getUtcOffsetSeconds()));
+        }
+        return forecast;
+    }
+
+    private Map<String, String> readUnits(JsonParser parser) throws IOException {
+
+        expect(parser, JsonToken.START_OBJECT);
+        Map<String, String> units = new LinkedHashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String variable = parser.getCurrentName();
+            parser.nextToken();
+            units.put(variable, parser.getValueAsString());
+        }
+        return units;
+    }
+
+    private HourlyReader readHourly(JsonParser parser) throws IOException {
+
+        expect(parser, JsonToken.START_OBJECT);
+        HourlyReader hourly = new HourlyReader();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String variable = parser.getCurrentName();
+            parser.nextToken();
+            expect(parser, JsonToken.START_ARRAY);
+            if (variable.equals("time")) {
+                hourly.readTime(parser);
+            } else {
+                hourly.readSeries(variable, parser);
+            }
+        }
+        return hourly;
+    }
+
+    private static void expect(JsonParser parser, JsonToken token) throws JsonMappingException {
+
+        if (parser.currentToken() != token) {
+            throw JsonMappingException.from(parser, "Expected " + token + " but got " + parser.currentToken());
+        }
+    }
+
+    private static final class HourlyReader {
+
+        private long[] time = new long[0];
+
+        private int timeSize;
+
+        private boolean localTimes;
+
+        private final Map<String, FloatSeries> series = new LinkedHashMap<>();
+
+        void readTime(JsonParser parser) throws IOException {
+
+            time = new long[INITIAL_CAPACITY];
+            timeSize = 0;
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (timeSize == time.length) {
+                    time = Arrays.copyOf(time, time.length * 2);
+                }
+                if (token == JsonToken.VALUE_NUMBER_INT) {
+                    time[timeSize++] = parser.getLongValue();
+                } else if (token == JsonToken.VALUE_STRING) {
+                    try {
+                        time[timeSize++] = LocalDateTime.parse(parser.getText()).toEpochSecond(ZoneOffset.UTC);
+                        localTimes = true;
+                    } catch (DateTimeParseException e) {
+                        throw JsonMappingException.from(parser, "Invalid hourly time " + parser.getText(), e);
+                    }
+                } else {
+                    throw JsonMappingException.from(parser, "Invalid hourly time token " + token);
+                }
+            }
+        }
+
+        void readSeries(String variable, JsonParser parser) throws IOException {
+
+            FloatSeries values = new FloatSeries();
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token == JsonToken.VALUE_NULL) {
+                    values.add(Float.NaN);
+                } else if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+                    values.add(parser.getFloatValue());
+                } else {
+                    throw JsonMappingException.from(parser, "Invalid value " + token + " in hourly " + variable);
+                }
+            }
+            series.put(variable, values);
+        }
+
+        Hourly build(JsonParser parser, int utcOffsetSeconds) throws JsonMappingException {
+
+            long[] times = Arrays.copyOf(time, timeSize);
+            if (localTimes) {
+                for (int i = 0; i < times.length; i++) {
+                    times[i] -= utcOffsetSeconds;
+                }
+            }
+            Map<String, float[]> values = new HashMap<>();
+            Map<String, SeriesStats> stats = new HashMap<>();
+            for (Map.Entry<String, FloatSeries> entry : series.entrySet()) {
+                FloatSeries variable = entry.getValue();
+                if (variable.size != timeSize) {
+                    throw JsonMappingException.from(parser, "Hourly " + entry.getKey() + " has " + variable.size
+                            + " values for " + timeSize + " times");
+                }
+                values.put(entry.getKey(), Arrays.copyOf(variable.values, variable.size));
+                stats.put(entry.getKey(), variable.stats());
+            }
+            return new Hourly(times, values, stats);
+        }
+    }
+
+    // Growable float[] that keeps min, max and sum of its non-NaN values
+    private static final class FloatSeries {
+
+        private float[] values = new float[INITIAL_CAPACITY];
+
+        private int size;
+
+        private float min = Float.POSITIVE_INFINITY;
+
+        private float max = Float.NEGATIVE_INFINITY;
+
+        private double sum;
+
+        private int count;
+
+        void add(float value) {
+
+            if (size == values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[size++] = value;
+            if (!Float.isNaN(value)) {
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+                sum += value;
+                count++;
+            }
+        }
+
+        SeriesStats stats() {
+
+            return count == 0
+                    ? new SeriesStats(Float.NaN, Float.NaN, Double.NaN, 0)
+                    : new SeriesStats(min, max, sum / count, count);
+        }
+    }
+}
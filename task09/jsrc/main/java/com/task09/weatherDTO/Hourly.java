@@ -1,19 +1,38 @@
 package com.task09.weatherDTO;
 
-import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
-import lombok.NoArgsConstructor;
-import lombok.Setter;
 
-import java.util.List;
+import java.util.Map;
 
+/**
+ * Hourly series of a forecast as primitive arrays: {@code time} in epoch seconds (UTC) and one {@code float[]}
+ * per Open-Meteo variable (e.g. {@code temperature_2m}), aligned with {@code time}. Missing values are NaN.
+ */
 @Getter
-@Setter
 @AllArgsConstructor
-@NoArgsConstructor
-@JsonIgnoreProperties(ignoreUnknown = true)
 public class Hourly {
-    private List<String> time;
-    private List<Number> temperature2mList;
-}
\ No newline at end of file
+    private long[] time;
+    private Map<String, float[]> series;
+    private Map<String, SeriesStats> stats;
+
+    public float[] getSeries(String variable) {
+        return series.get(variable);
+    }
+
+    public SeriesStats getStats(String variable) {
+        return stats.get(variable);
+    }
+
+    public float[] getTemperature2m() {
+        return series.get("temperature_2m");
+    }
+
+    public float[] getRelativeHumidity2m() {
+        return series.get("relative_humidity_2m");
+    }
+
+    public float[] getWindSpeed10m() {
+        return series.get("wind_speed_10m");
+    }
+}
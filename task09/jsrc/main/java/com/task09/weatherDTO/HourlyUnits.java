@@ -1,18 +1,24 @@
 package com.task09.weatherDTO;
 
-import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
-import lombok.Setter;
+
+import java.util.Map;
 
 @Getter
-@Setter
 @AllArgsConstructor
 @NoArgsConstructor
-@JsonIgnoreProperties(ignoreUnknown = true)
 public  class HourlyUnits {
-    private String time;
-    private String temperature2mString;
+    // Open-Meteo variable name -> unit, "time" included
+    private Map<String, String> units = Map.of();
+
+    public String getTime() {
+        return units.get("time");
+    }
+
+    public String get(String variable) {
+        return units.get(variable);
+    }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,33 @@
+package com.task09.weatherDTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Minimum, maximum and mean of one hourly series, computed while it is parsed. NaN values are left out;
+ * for a series without values all three are NaN and {@code count} is 0.
+ */
+@Getter
+@AllArgsConstructor
+public class SeriesStats {
+    private float min;
+    private float max;
+    private double mean;
+    private int count;
+
+    public static SeriesStats of(float[] values) {
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        double sum = 0;
+        int count = 0;
+        for (float value : values) {
+            if (!Float.isNaN(value)) {
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+                sum += value;
+                count++;
+            }
+        }
+        return count == 0 ? new SeriesStats(Float.NaN, Float.NaN, Double.NaN, 0) : new SeriesStats(min, max, sum / count, count);
+    }
+}
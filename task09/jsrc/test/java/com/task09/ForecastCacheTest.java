@@ -0,0 +1,323 @@
+package com.task09;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.PutItemOutcome;
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.task09.weatherDTO.Forecast;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs {@link ForecastCache} against a local HTTP stub of Open-Meteo and an in-memory Weather table. Freshness is
+ * driven by the stub's Cache-Control header: {@code max-age=0} makes an entry stale right away, but still within
+ * the stale-while-revalidate window.
+ */
+public class ForecastCacheTest {
+
+    private static final ForecastQuery QUERY = ForecastQuery.of(52.52, 13.41);
+
+    private HttpServer server;
+
+    // Several threads, so a held response does not block the next request
+    private final ExecutorService serverExecutor = Executors.newCachedThreadPool();
+
+    private String baseUrl;
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private final List<String> ifNoneMatch = new CopyOnWriteArrayList<>();
+
+    // Answers the next request; replaced by each test
+    private volatile Upstream upstream;
+
+    private final InMemoryTable table = new InMemoryTable();
+
+    private interface Upstream {
+        void respond(HttpExchange exchange) throws IOException;
+    }
+
+    @Before
+    public void startServer() throws IOException {
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/v1/forecast", exchange -> {
+            calls.incrementAndGet();
+            String etag = exchange.getRequestHeaders().getFirst("If-None-Match");
+            if (etag != null) {
+                ifNoneMatch.add(etag);
+            }
+            try {
+                upstream.respond(exchange);
+            } finally {
+                exchange.close();
+            }
+        });
+        server.setExecutor(serverExecutor);
+        server.start();
+        baseUrl = "http://localhost:" + server.getAddress().getPort() + "/v1/forecast";
+    }
+
+    @After
+    public void stopServer() {
+
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    public void servesFreshEntryWithoutCallingUpstream() throws IOException {
+
+        upstream = exchange -> forecast(exchange, 600, "\"v1\"", 10);
+        ForecastCache cache = new ForecastCache(baseUrl, table);
+
+        Forecast first = cache.get(QUERY);
+        Forecast second = cache.get(QUERY);
+
+        assertSame(first, second);
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void parsesGzipEncodedResponse() throws IOException {
+
+        upstream = exchange -> {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+                out.write(forecastBody(12));
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            exchange.getResponseHeaders().add("Cache-Control", "max-age=600");
+            exchange.sendResponseHeaders(200, compressed.size());
+            exchange.getResponseBody().write(compressed.toByteArray());
+        };
+
+        assertEquals(12, temperature(new ForecastCache(baseUrl, table).get(QUERY)), 0);
+    }
+
+    @Test
+    public void revalidatesExpiredEntryAndKeepsItOn304() throws Exception {
+
+        upstream = exchange -> {
+            if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.getResponseHeaders().add("Cache-Control", "max-age=600");
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                forecast(exchange, 0, "\"v1\"", 10);
+            }
+        };
+        ForecastCache cache = new ForecastCache(baseUrl, table);
+        Forecast first = cache.get(QUERY);
+
+        // Stale: served as is while the conditional request runs
+        assertSame(first, cache.get(QUERY));
+        awaitTrue(() -> calls.get() == 2);
+
+        assertEquals(List.of("\"v1\""), ifNoneMatch);
+        // The 304 made the entry fresh again, so no further request is made
+        awaitTrue(() -> {
+            try {
+                return cache.get(QUERY) == first && calls.get() == 2;
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        });
+        // Only the 200 was written to the table
+        assertEquals(1, table.puts.get());
+    }
+
+    @Test
+    public void servesStaleEntryWhileRefreshingInBackground() throws Exception {
+
+        upstream = exchange -> forecast(exchange, 0, null, 10);
+        ForecastCache cache = new ForecastCache(baseUrl, table);
+        cache.get(QUERY);
+
+        CountDownLatch release = new CountDownLatch(1);
+        upstream = exchange -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            forecast(exchange, 600, null, 20);
+        };
+        // The refresh is held by the stub, yet both callers get the stale forecast right away
+        assertEquals(10, temperature(cache.get(QUERY)), 0);
+        assertEquals(10, temperature(cache.get(QUERY)), 0);
+        release.countDown();
+
+        awaitTrue(() -> {
+            try {
+                return temperature(cache.get(QUERY)) == 20;
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        });
+        // Both stale reads shared one refresh
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void revalidatedGetWaitsForTheRefreshOfAStaleEntry() throws IOException {
+
+        upstream = exchange -> forecast(exchange, 0, null, 10);
+        ForecastCache cache = new ForecastCache(baseUrl, table);
+        cache.get(QUERY);
+
+        upstream = exchange -> forecast(exchange, 600, null, 20);
+        assertEquals(20, temperature(cache.getRevalidated(QUERY)), 0);
+        assertEquals(2, calls.get());
+
+        // Fresh now, so no further request
+        assertEquals(20, temperature(cache.getRevalidated(QUERY)), 0);
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void opensCircuitAfterRepeatedFailuresAndLetsOneTrialThrough() throws Exception {
+
+        upstream = exchange -> exchange.sendResponseHeaders(503, -1);
+        ForecastCache cache = new ForecastCache(baseUrl, table, new CircuitBreaker(5, Duration.ofMillis(200)));
+
+        for (int i = 0; i < 8; i++) {
+            expectFailure(cache);
+        }
+        assertEquals("calls after the circuit opened", 5, calls.get());
+
+        // Half-open: one trial, which fails and opens the circuit again
+        Thread.sleep(250);
+        expectFailure(cache);
+        expectFailure(cache);
+        assertEquals(6, calls.get());
+
+        // The next trial succeeds and closes the circuit
+        Thread.sleep(250);
+        upstream = exchange -> forecast(exchange, 0, null, 10);
+        assertEquals(10, temperature(cache.get(QUERY)), 0);
+        assertEquals(7, calls.get());
+    }
+
+    @Test
+    public void coldContainerStartsFromStoredEntry() throws IOException {
+
+        upstream = exchange -> forecast(exchange, 600, "\"v1\"", 10);
+        new ForecastCache(baseUrl, table).get(QUERY);
+        Item item = table.items.get("forecast-cache#" + QUERY.cacheKey());
+        assertNotNull("cache item written", item);
+        // Stored in the compact form, not as the raw response
+        assertTrue(item.isPresent("hourly"));
+        assertFalse(item.isPresent("body"));
+
+        // A new container whose upstream is unreachable still answers from the table
+        ForecastCache cold = new ForecastCache("http://localhost:1/v1/forecast", table);
+        assertEquals(10, temperature(cold.get(QUERY)), 0);
+        assertEquals(1, calls.get());
+    }
+
+    private static void forecast(HttpExchange exchange, int maxAge, String etag, float temperature) throws IOException {
+
+        byte[] body = forecastBody(temperature);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.getResponseHeaders().add("Cache-Control", "max-age=" + maxAge);
+        if (etag != null) {
+            exchange.getResponseHeaders().add("ETag", etag);
+        }
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    private static byte[] forecastBody(float temperature) {
+
+        return String.format(Locale.ROOT, "{\"latitude\":52.52,\"longitude\":13.419998,\"generationtime_ms\":0.05,"
+                + "\"utc_offset_seconds\":0,\"timezone\":\"GMT\",\"hourly_units\":{\"time\":\"unixtime\",\"temperature_2m\":\"\\u00b0C\"},"
+                + "\"hourly\":{\"time\":[1721952000,1721955600],\"temperature_2m\":[%s,%s]}}", temperature, temperature)
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static float temperature(Forecast forecast) {
+
+        return forecast.getHourly().getSeries("temperature_2m")[0];
+    }
+
+    private static void expectFailure(ForecastCache cache) {
+
+        try {
+            cache.get(QUERY);
+            fail("Expected the upstream failure to be reported");
+        } catch (IOException expected) {
+            // No cached entry to fall back to
+        }
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Condition not met within 5 s");
+            }
+            Thread.sleep(20);
+        }
+    }
+
+    // Weather table in memory; supports the two calls ForecastCache makes
+    private static final class InMemoryTable extends Table {
+
+        private final Map<String, Item> items = new ConcurrentHashMap<>();
+
+        private final AtomicInteger puts = new AtomicInteger();
+
+        InMemoryTable() {
+
+            super((AmazonDynamoDB) Proxy.newProxyInstance(AmazonDynamoDB.class.getClassLoader(),
+                    new Class<?>[]{AmazonDynamoDB.class}, (proxy, method, args) -> {
+                        throw new UnsupportedOperationException(method.getName());
+                    }), "Weather");
+        }
+
+        @Override
+        public Item getItem(String hashKeyName, Object hashKeyValue) {
+
+            return items.get(String.valueOf(hashKeyValue));
+        }
+
+        @Override
+        public PutItemOutcome putItem(Item item) {
+
+            items.put(item.getString("id"), item);
+            puts.incrementAndGet();
+            return null;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.task09;
+
+import com.task09.weatherDTO.Forecast;
+import com.task09.weatherDTO.Hourly;
+import com.task09.weatherDTO.HourlyUnits;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * {@link ForecastSeries} over fixed forecasts: which stored hour wins, the range edges and the aggregation.
+ */
+public class ForecastSeriesTest {
+
+    private static final String LOCATION = "52.5200,13.4200";
+
+    private static final String VARIABLE = "temperature_2m";
+
+    // 2024-07-26T00:00:00Z
+    private static final long MIDNIGHT = 1721952000;
+
+    private static final long HOUR = 3600;
+
+    private final List<Forecast> stored = new ArrayList<>();
+
+    private final ForecastSeries series = new ForecastSeries((location, from, to) -> {
+        assertEquals(LOCATION, location);
+        return stored;
+    });
+
+    @Test
+    public void rawSeriesSkipsMissingValues() {
+
+        stored.add(forecast(MIDNIGHT, 0, 1, Float.NaN, 3, Float.NaN, 5));
+
+        SeriesResult result = series.query(LOCATION, VARIABLE, MIDNIGHT, MIDNIGHT + 5 * HOUR, SeriesResolution.RAW);
+
+        assertArrayEquals(new long[]{MIDNIGHT, MIDNIGHT + 2 * HOUR, MIDNIGHT + 4 * HOUR}, result.getTime());
+        assertArrayEquals(new float[]{1, 3, 5}, result.getValue(), 0);
+        assertNull(result.getMin());
+        assertEquals("°C", result.getUnit());
+        assertEquals(52.52, result.getLatitude(), 0);
+    }
+
+    @Test
+    public void fromIsInclusiveAndToIsExclusive() {
+
+        stored.add(forecast(MIDNIGHT, 0, 0, 1, 2, 3, 4, 5));
+
+        SeriesResult result = series.query(LOCATION, VARIABLE, MIDNIGHT + HOUR, MIDNIGHT + 4 * HOUR, SeriesResolution.RAW);
+
+        assertArrayEquals(new long[]{MIDNIGHT + HOUR, MIDNIGHT + 2 * HOUR, MIDNIGHT + 3 * HOUR}, result.getTime());
+        assertArrayEquals(new float[]{1, 2, 3}, result.getValue(), 0);
+    }
+
+    @Test
+    public void newerForecastWinsWhereForecastsOverlap() {
+
+        float[] older = new float[48];
+        Arrays.fill(older, 1);
+        float[] newer = new float[48];
+        Arrays.fill(newer, 2);
+        stored.add(forecast(MIDNIGHT, 0, older));
+        stored.add(forecast(MIDNIGHT + 24 * HOUR, 0, newer));
+
+        SeriesResult result = series.query(LOCATION, VARIABLE, MIDNIGHT, MIDNIGHT + 48 * HOUR, SeriesResolution.RAW);
+
+        assertEquals(48, result.getTime().length);
+        for (int i = 0; i < 48; i++) {
+            assertEquals(MIDNIGHT + i * HOUR, result.getTime()[i]);
+            assertEquals("hour " + i, i < 24 ? 1 : 2, result.getValue()[i], 0);
+        }
+    }
+
+    @Test
+    public void dailyBucketsAreAlignedToLocalMidnight() {
+
+        // UTC+2: local midnight is 22:00 UTC of the previous day
+        int offset = 2 * 3600;
+        long localMidnight = MIDNIGHT - offset;
+        float[] values = new float[48];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i < 24 ? i : 100 + i;
+        }
+        values[30] = Float.NaN;
+        stored.add(forecast(localMidnight, offset, values));
+
+        SeriesResult result = series.query(LOCATION, VARIABLE, localMidnight, localMidnight + 48 * HOUR, SeriesResolution.DAILY);
+
+        assertArrayEquals(new long[]{localMidnight, localMidnight + 24 * HOUR}, result.getTime());
+        assertArrayEquals(new float[]{0, 124}, result.getMin(), 0);
+        assertArrayEquals(new float[]{23, 147}, result.getMax(), 0);
+        assertArrayEquals(new int[]{24, 23}, result.getCount());
+        assertEquals(11.5, result.getMean()[0], 0.0001);
+        // 124..147 without 130
+        assertEquals((135.5 * 24 - 130) / 23, result.getMean()[1], 0.0001);
+        assertNull(result.getValue());
+    }
+
+    @Test
+    public void hourlyBucketsStartOnTheHour() {
+
+        stored.add(forecast(MIDNIGHT, 0, 4, 6));
+
+        SeriesResult result = series.query(LOCATION, VARIABLE, MIDNIGHT, MIDNIGHT + 2 * HOUR, SeriesResolution.HOURLY);
+
+        assertArrayEquals(new long[]{MIDNIGHT, MIDNIGHT + HOUR}, result.getTime());
+        assertArrayEquals(new float[]{4, 6}, result.getMean(), 0);
+        assertArrayEquals(new int[]{1, 1}, result.getCount());
+    }
+
+    @Test
+    public void allowsAtMostMaxPoints() {
+
+        stored.add(forecast(MIDNIGHT, 0, 1));
+
+        long maxRange = ForecastSeries.MAX_POINTS * HOUR;
+        assertEquals(1, series.query(LOCATION, VARIABLE, MIDNIGHT, MIDNIGHT + maxRange, SeriesResolution.RAW).getTime().length);
+        expectRejected(MIDNIGHT, MIDNIGHT + maxRange + HOUR, SeriesResolution.RAW);
+        expectRejected(MIDNIGHT, MIDNIGHT + maxRange + HOUR, SeriesResolution.HOURLY);
+        // The same range is fine at daily resolution
+        series.query(LOCATION, VARIABLE, MIDNIGHT, MIDNIGHT + maxRange + HOUR, SeriesResolution.DAILY);
+    }
+
+    @Test
+    public void rejectsEmptyRange() {
+
+        expectRejected(MIDNIGHT, MIDNIGHT, SeriesResolution.RAW);
+    }
+
+    @Test
+    public void returnsNullWithoutStoredForecasts() {
+
+        assertNull(series.query(LOCATION, VARIABLE, MIDNIGHT, MIDNIGHT + HOUR, SeriesResolution.RAW));
+    }
+
+    private void expectRejected(long from, long to, SeriesResolution resolution) {
+
+        try {
+            series.query(LOCATION, VARIABLE, from, to, resolution);
+            fail("Expected " + resolution + " query of " + (to - from) + " s to be rejected");
+        } catch (IllegalArgumentException expected) {
+            // Reported as 400
+        }
+    }
+
+    // Hourly forecast starting at start
+    private static Forecast forecast(long start, int utcOffsetSeconds, float... values) {
+
+        long[] time = new long[values.length];
+        for (int i = 0; i < time.length; i++) {
+            time[i] = start + i * HOUR;
+        }
+        Map<String, float[]> series = new HashMap<>();
+        series.put(VARIABLE, values);
+        Forecast forecast = new Forecast();
+        forecast.setLatitude(52.52);
+        forecast.setLongitude(13.42);
+        forecast.setUtcOffsetSeconds(utcOffsetSeconds);
+        forecast.setHourlyUnits(new HourlyUnits(Map.of("time", "unixtime", VARIABLE, "°C")));
+        forecast.setHourly(new Hourly(time, series, new HashMap<>()));
+        return forecast;
+    }
+}
@@ -0,0 +1,244 @@
+package com.task09;
+
+import com.task09.weatherDTO.Hourly;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Round trips of {@link HourlySeriesCodec} and its handling of payloads it did not write.
+ */
+public class HourlySeriesCodecTest {
+
+    private static final long START = 1721952000;
+
+    @Test
+    public void roundTripsRegularTimes() {
+
+        long[] time = hours(START, 168);
+        float[] temperature = new float[time.length];
+        float[] humidity = new float[time.length];
+        for (int i = 0; i < time.length; i++) {
+            temperature[i] = Math.round((15 + 8 * Math.sin(i * Math.PI / 12)) * 10) / 10f;
+            humidity[i] = 40 + i % 50;
+        }
+
+        Hourly decoded = roundTrip(hourly(time, "temperature_2m", temperature, "relative_humidity_2m", humidity));
+
+        assertArrayEquals(time, decoded.getTime());
+        assertArrayEquals(temperature, decoded.getSeries("temperature_2m"), 0);
+        assertArrayEquals(humidity, decoded.getSeries("relative_humidity_2m"), 0);
+        assertEquals(2, decoded.getSeries().size());
+    }
+
+    @Test
+    public void roundTripsIrregularTimes() {
+
+        // A gap, a daylight saving like double hour and a time before the epoch
+        long[] time = {-3600, 0, 3600, 10800, 10800 + 1800, 86400};
+        float[] values = {1.5f, -2.5f, 0, 100.1f, -0.1f, 7};
+
+        Hourly decoded = roundTrip(hourly(time, "wind_speed_10m", values));
+
+        assertArrayEquals(time, decoded.getTime());
+        assertArrayEquals(values, decoded.getSeries("wind_speed_10m"), 0);
+    }
+
+    @Test
+    public void keepsMissingValuesAtTheirPositions() {
+
+        long[] time = hours(START, 20);
+        float[] values = new float[time.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i;
+        }
+        // First, last and both sides of a bitmap byte boundary
+        for (int missing : new int[]{0, 7, 8, 15, 16, 19}) {
+            values[missing] = Float.NaN;
+        }
+        float[] allMissing = new float[time.length];
+        Arrays.fill(allMissing, Float.NaN);
+
+        Hourly decoded = roundTrip(hourly(time, "temperature_2m", values, "precipitation", allMissing));
+
+        float[] temperature = decoded.getSeries("temperature_2m");
+        for (int i = 0; i < values.length; i++) {
+            assertEquals("temperature_2m[" + i + "]", values[i], temperature[i], 0);
+        }
+        for (float value : decoded.getSeries("precipitation")) {
+            assertTrue(Float.isNaN(value));
+        }
+        assertEquals(14, decoded.getStats("temperature_2m").getCount());
+        assertEquals(0, decoded.getStats("precipitation").getCount());
+    }
+
+    @Test
+    public void roundsValuesWithMoreThanFourDecimals() {
+
+        long[] time = hours(START, 3);
+        float[] values = {1.23456789f, -0.00004f, 98.76543f};
+
+        float[] decoded = roundTrip(hourly(time, "soil_moisture_0_to_1cm", values)).getSeries("soil_moisture_0_to_1cm");
+
+        assertArrayEquals(new float[]{1.2346f, 0f, 98.7654f}, decoded, 0.000001f);
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(values[i], decoded[i], 0.00005);
+        }
+    }
+
+    @Test
+    public void roundTripsEmptySeries() {
+
+        Hourly withoutVariables = roundTrip(hourly(new long[0]));
+        assertEquals(0, withoutVariables.getTime().length);
+        assertTrue(withoutVariables.getSeries().isEmpty());
+
+        Hourly withEmptyVariable = roundTrip(hourly(new long[0], "temperature_2m", new float[0]));
+        assertEquals(0, withEmptyVariable.getSeries("temperature_2m").length);
+    }
+
+    @Test
+    public void roundTripsSinglePoint() {
+
+        Hourly decoded = roundTrip(hourly(new long[]{START}, "temperature_2m", new float[]{21.3f}));
+
+        assertArrayEquals(new long[]{START}, decoded.getTime());
+        assertArrayEquals(new float[]{21.3f}, decoded.getSeries("temperature_2m"), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsSeriesOfWrongLength() {
+
+        HourlySeriesCodec.encode(hourly(hours(START, 3), "temperature_2m", new float[2]));
+    }
+
+    @Test
+    public void rejectsUnknownVersionAndEmptyInput() {
+
+        byte[] encoded = HourlySeriesCodec.encode(sample());
+        encoded[0] = 2;
+
+        expectRejected(encoded);
+        expectRejected(new byte[0]);
+    }
+
+    @Test
+    public void rejectsCorruptCompressedData() {
+
+        byte[] encoded = HourlySeriesCodec.encode(sample());
+        for (int i = 1; i < encoded.length; i++) {
+            encoded[i] = (byte) ~encoded[i];
+        }
+
+        expectRejected(encoded);
+    }
+
+    @Test
+    public void rejectsEveryTruncationOfTheCompressedData() {
+
+        byte[] encoded = HourlySeriesCodec.encode(sample());
+        for (int length = 1; length < encoded.length; length++) {
+            expectRejected(Arrays.copyOf(encoded, length));
+        }
+    }
+
+    @Test
+    public void rejectsEveryTruncationOfTheDecompressedPayload() throws DataFormatException {
+
+        // Valid deflate streams whose content ends early, so the decoder runs out of bytes
+        byte[] payload = inflate(HourlySeriesCodec.encode(sample()));
+        for (int length = 0; length < payload.length; length++) {
+            expectRejected(deflate(Arrays.copyOf(payload, length)));
+        }
+    }
+
+    @Test
+    public void rejectsImplausibleLengths() {
+
+        // count = 2^40 as a varint
+        expectRejected(deflate(new byte[]{(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x20}));
+    }
+
+    private static Hourly roundTrip(Hourly hourly) {
+
+        return HourlySeriesCodec.decode(HourlySeriesCodec.encode(hourly));
+    }
+
+    private static Hourly sample() {
+
+        long[] time = hours(START, 48);
+        float[] values = new float[time.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i % 5 == 0 ? Float.NaN : i * 0.5f;
+        }
+        return hourly(time, "temperature_2m", values, "wind_speed_10m", Arrays.copyOf(values, values.length));
+    }
+
+    private static Hourly hourly(long[] time, Object... variablesAndValues) {
+
+        Map<String, float[]> series = new HashMap<>();
+        for (int i = 0; i < variablesAndValues.length; i += 2) {
+            series.put((String) variablesAndValues[i], (float[]) variablesAndValues[i + 1]);
+        }
+        return new Hourly(time, series, new HashMap<>());
+    }
+
+    private static long[] hours(long start, int count) {
+
+        long[] time = new long[count];
+        for (int i = 0; i < count; i++) {
+            time[i] = start + i * 3600L;
+        }
+        return time;
+    }
+
+    private static void expectRejected(byte[] encoded) {
+
+        try {
+            HourlySeriesCodec.decode(encoded);
+            fail("Expected " + encoded.length + " bytes to be rejected");
+        } catch (IllegalArgumentException expected) {
+            // The only exception callers have to handle
+        }
+    }
+
+    private static byte[] inflate(byte[] encoded) throws DataFormatException {
+
+        Inflater inflater = new Inflater();
+        inflater.setInput(encoded, 1, encoded.length - 1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[1024];
+        while (!inflater.finished()) {
+            out.write(chunk, 0, inflater.inflate(chunk));
+        }
+        inflater.end();
+        return out.toByteArray();
+    }
+
+    // Same framing as the codec: version byte, then the deflated payload
+    private static byte[] deflate(byte[] payload) {
+
+        Deflater deflater = new Deflater();
+        deflater.setInput(payload);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(1);
+        byte[] chunk = new byte[1024];
+        while (!deflater.finished()) {
+            out.write(chunk, 0, deflater.deflate(chunk));
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+}
@@ -2,8 +2,11 @@ package com.task11;
 
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
+import com.amazonaws.services.dynamodbv2.model.AmazonDynamoDBException;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
 import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.Select;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
@@ -33,6 +36,8 @@ import java.util.*;
 		@EnvironmentVariable(key = "booking_userpool", value = "${booking_userpool}")})
 public class ApiHandler implements RequestHandler<ApiHandler.APIRequest, APIGatewayV2HTTPResponse> {
 
+	private static final String TABLE_NUMBER_INDEX = "number-index";
+
 	private final ObjectMapper objectMapper = new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL);
 
 	private final AmazonDynamoDB amazonDynamoDB = AmazonDynamoDBClientBuilder.standard().withRegion(System.getenv("region")).build();
@@ -337,12 +342,40 @@ public class ApiHandler implements RequestHandler<ApiHandler.APIRequest, APIGate
 	}
 
 	private boolean validateTable(Reservation reservation) {
+		// Limit 2 keeps the "exactly one table with this number" semantics while reading at most two index entries
+		var queryRequest = new QueryRequest(System.getenv("tables_table"))
+				.withIndexName(TABLE_NUMBER_INDEX)
+				.withKeyConditionExpression("#number = :number")
+				.withExpressionAttributeNames(Map.of("#number", "number"))
+				.withExpressionAttributeValues(Map.of(":number", new AttributeValue().withN(String.valueOf(reservation.tableNumber()))))
+				.withSelect(Select.COUNT)
+				.withLimit(2);
+		try {
+			var tableCount = amazonDynamoDB.query(queryRequest).getCount();
+			System.out.println("Validate table:" + tableCount);
+			return tableCount == 1;
+		} catch (AmazonDynamoDBException e) {
+			if (!isIndexUnavailable(e)) {
+				throw e;
+			}
+			System.err.println("Index " + TABLE_NUMBER_INDEX + " is not available yet, falling back to scan: " + e.getErrorMessage());
+			return scanValidateTable(reservation);
+		}
+	}
+
+	// Used only while number-index is missing or still backfilling on an existing deployment (see README)
+	private boolean scanValidateTable(Reservation reservation) {
 		var tableList = amazonDynamoDB.scan(new ScanRequest(System.getenv("tables_table")))
 				.getItems().stream().map(this::buildTableResponse).filter(value -> reservation.tableNumber().equals(value.number())).count();
-		System.out.println("Validate table:" + tableList);
+		System.out.println("Validate table (scan):" + tableList);
 		return tableList == 1;
 	}
 
+	private boolean isIndexUnavailable(AmazonDynamoDBException e) {
+		return "ValidationException".equals(e.getErrorCode()) && e.getErrorMessage() != null
+				&& e.getErrorMessage().contains("index");
+	}
+
 	private boolean validateReservation(Reservation reservation) {
 		var reservationList = amazonDynamoDB.scan(new ScanRequest(System.getenv("reservations_table")))
 				.getItems().stream().map(this::buildReservationResponse)
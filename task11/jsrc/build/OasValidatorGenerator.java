@@ -0,0 +1,280 @@
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Build step that compiles the request schemas of the API Gateway OpenAPI export into plain Java checks,
+ * {@code com.task11.RequestValidators}, so the lambda never reads or interprets the schema at runtime.
+ * Runs in generate-sources (see pom.xml):
+ * {@code java -cp <classpath> OasValidatorGenerator.java <oas json> <output source dir>}
+ * <p>
+ * Supported: path and query parameters, one JSON object request body with integer, boolean and string
+ * properties, and at most one array of objects (passed to the lambda as body_items). Keywords: required,
+ * minimum, maximum, format (int32 or int64), pattern, maxLength, enum, minItems, maxItems, plus the
+ * annotations description, example and title. Anything else fails the build, so the document cannot
+ * silently drift away from what is validated. The handler reads integers as int, so integers without a
+ * format are bounded like int32.
+ */
+public class OasValidatorGenerator {
+
+	private static final Set<String> METHODS = Set.of("get", "post", "put", "patch", "delete");
+
+	private static final Set<String> ANNOTATIONS = Set.of("type", "description", "example", "title");
+
+	private static final Map<String, Set<String>> KEYWORDS = Map.of(
+			"integer", Set.of("minimum", "maximum", "format"),
+			"boolean", Set.of(),
+			"string", Set.of("pattern", "maxLength", "enum"),
+			"object", Set.of("properties", "required"),
+			"array", Set.of("items", "minItems", "maxItems"));
+
+	private static final Set<String> PARAMETER_FIELDS = Set.of("name", "in", "required", "description", "example", "schema");
+
+	private final StringBuilder cases = new StringBuilder();
+
+	private final StringBuilder methods = new StringBuilder();
+
+	private final StringBuilder constants = new StringBuilder();
+
+	// Constant name by declaration, so equal patterns and enums are compiled once
+	private final Map<String, String> constantNames = new HashMap<>();
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			throw new IllegalArgumentException("usage: OasValidatorGenerator <oas json> <output source dir>");
+		}
+		var oas = new ObjectMapper().readTree(Path.of(args[0]).toFile());
+		var generator = new OasValidatorGenerator();
+		var paths = oas.path("paths").fields();
+		while (paths.hasNext()) {
+			var path = paths.next();
+			var operations = path.getValue().fields();
+			while (operations.hasNext()) {
+				var operation = operations.next();
+				if (METHODS.contains(operation.getKey())) {
+					generator.addOperation(operation.getKey().toUpperCase(Locale.ROOT), path.getKey(), operation.getValue());
+				}
+			}
+		}
+		var target = Path.of(args[1], "com", "task11", "RequestValidators.java");
+		Files.createDirectories(target.getParent());
+		Files.writeString(target, generator.source(Path.of(args[0]).getFileName().toString()), StandardCharsets.UTF_8);
+		System.out.println("Generated " + target);
+	}
+
+	private void addOperation(String method, String path, JsonNode operation) {
+		var name = methodName(method, path);
+		cases.append("\t\t\tcase \"").append(method).append(' ').append(path).append("\" -> ")
+				.append(name).append("(request, violations);\n");
+
+		var checks = new StringBuilder();
+		for (var parameter : operation.path("parameters")) {
+			var parameterName = parameter.path("name").asText();
+			var required = parameter.path("required").asBoolean(false);
+			parameter.fieldNames().forEachRemaining(key -> {
+				if (!PARAMETER_FIELDS.contains(key)) {
+					throw unsupported(path, "parameter field " + key + " of " + parameterName);
+				}
+			});
+			switch (parameter.path("in").asText()) {
+				case "query" -> checks.append("\t\t").append(check("\"" + parameterName + "\"",
+						"RequestValidation.param(query.get(\"" + parameterName + "\"))", required, parameter.path("schema"), path));
+				case "path" -> checks.append("\t\t").append(check("\"" + parameterName + "\"",
+						"RequestValidation.param(request." + snakeCase(parameterName) + "())", required, parameter.path("schema"), path));
+				case "header" -> {
+					// Headers are passed in dedicated fields and checked where they are used
+				}
+				default -> throw unsupported(path, "parameter location " + parameter.path("in").asText());
+			}
+		}
+
+		var body = operation.path("requestBody").path("content").path("application/json").path("schema");
+		if (!body.isMissingNode()) {
+			if (!"object".equals(body.path("type").asText())) {
+				throw unsupported(path, "request body of type " + body.path("type").asText());
+			}
+			checks.append(objectChecks(body, "body", "\"", "\t\t", path));
+		}
+
+		methods.append("\n\tprivate static void ").append(name)
+				.append("(ApiHandler.APIRequest request, List<RequestValidation.Violation> violations) {\n");
+		if (checks.indexOf("query.") >= 0) {
+			methods.append("\t\tvar query = RequestValidation.orEmpty(request.query_params());\n");
+		}
+		if (checks.indexOf("body.") >= 0) {
+			methods.append("\t\tvar body = RequestValidation.orEmpty(request.body_json());\n");
+		}
+		methods.append(checks).append("\t}\n");
+	}
+
+	// Checks for the properties of one object; fieldPrefix is the opening of the Java expression naming the field
+	private String objectChecks(JsonNode schema, String source, String fieldPrefix, String indent, String path) {
+		checkKeywords(schema, source, path);
+		var required = new HashSet<String>();
+		schema.path("required").forEach(name -> required.add(name.asText()));
+		var checks = new StringBuilder();
+		boolean arraySeen = false;
+		var properties = schema.path("properties").fields();
+		while (properties.hasNext()) {
+			var property = properties.next();
+			var field = fieldPrefix + property.getKey() + "\"";
+			var propertySchema = property.getValue();
+			if ("array".equals(propertySchema.path("type").asText())) {
+				if (arraySeen || !"body".equals(source) || !"object".equals(propertySchema.path("items").path("type").asText())) {
+					throw unsupported(path, "array property " + property.getKey());
+				}
+				checkKeywords(propertySchema, property.getKey(), path);
+				arraySeen = true;
+				checks.append(indent).append("RequestValidation.items(violations, ").append(field).append(", request.body_items(), ")
+						.append(required.contains(property.getKey())).append(", ")
+						.append(intLiteral(propertySchema, "minItems")).append(", ")
+						.append(intLiteral(propertySchema, "maxItems")).append(");\n");
+				checks.append(indent).append("if (request.body_items() != null) {\n")
+						.append(indent).append("\tfor (int i = 0; i < request.body_items().size(); i++) {\n")
+						.append(indent).append("\t\tvar item = RequestValidation.orEmpty(request.body_items().get(i));\n")
+						.append(objectChecks(propertySchema.path("items"), "item",
+								"\"" + property.getKey() + "[\" + i + \"].", indent + "\t\t", path))
+						.append(indent).append("\t}\n")
+						.append(indent).append("}\n");
+				continue;
+			}
+			checks.append(indent).append(check(field, source + ".get(\"" + property.getKey() + "\")",
+					required.contains(property.getKey()), propertySchema, path));
+		}
+		return checks.toString();
+	}
+
+	private String check(String field, String value, boolean required, JsonNode schema, String path) {
+		var type = schema.path("type").asText();
+		if (!type.equals("object") && !type.equals("array")) {
+			checkKeywords(schema, field, path);
+		}
+		return switch (type) {
+			case "integer" -> {
+				var range = integerRange(schema, field, path);
+				yield "RequestValidation.integer(violations, " + field + ", " + value + ", " + required + ", "
+						+ bound(schema, "minimum", range[0]) + ", " + bound(schema, "maximum", range[1]) + ");\n";
+			}
+			case "boolean" -> "RequestValidation.bool(violations, " + field + ", " + value + ", " + required + ");\n";
+			case "string" -> "RequestValidation.string(violations, " + field + ", " + value + ", " + required + ", "
+					+ patternConstant(schema) + ", " + intLiteral(schema, "maxLength") + ", " + enumConstant(schema) + ");\n";
+			default -> throw unsupported(path, "type " + type + " of " + field);
+		};
+	}
+
+	private static void checkKeywords(JsonNode schema, String field, String path) {
+		var type = schema.path("type").asText();
+		var supported = KEYWORDS.get(type);
+		if (supported == null) {
+			throw unsupported(path, "type " + type + " of " + field);
+		}
+		schema.fieldNames().forEachRemaining(keyword -> {
+			if (!ANNOTATIONS.contains(keyword) && !supported.contains(keyword)) {
+				throw unsupported(path, "keyword " + keyword + " of " + field);
+			}
+		});
+	}
+
+	// Smallest and largest value of the integer format
+	private static long[] integerRange(JsonNode schema, String field, String path) {
+		var format = schema.path("format").asText("int32");
+		return switch (format) {
+			case "int32" -> new long[]{Integer.MIN_VALUE, Integer.MAX_VALUE};
+			case "int64" -> new long[]{Long.MIN_VALUE, Long.MAX_VALUE};
+			default -> throw unsupported(path, "format " + format + " of " + field);
+		};
+	}
+
+	// The schema's bound, narrowed to the range of the format
+	private static String bound(JsonNode schema, String keyword, long formatBound) {
+		if (!schema.has(keyword)) {
+			return formatBound == Long.MIN_VALUE || formatBound == Long.MAX_VALUE ? "null" : formatBound + "L";
+		}
+		var value = schema.path(keyword).asLong();
+		return (keyword.equals("minimum") ? Math.max(value, formatBound) : Math.min(value, formatBound)) + "L";
+	}
+
+	private String patternConstant(JsonNode schema) {
+		if (!schema.has("pattern")) {
+			return "null";
+		}
+		return constant("PATTERN_", "Pattern", "Pattern.compile(" + javaString(schema.path("pattern").asText()) + ")");
+	}
+
+	private String enumConstant(JsonNode schema) {
+		if (!schema.has("enum")) {
+			return "null";
+		}
+		var values = new ArrayList<String>();
+		schema.path("enum").forEach(value -> values.add(javaString(value.asText())));
+		return constant("ENUM_", "Set<String>", "Set.of(" + String.join(", ", values) + ")");
+	}
+
+	private String constant(String prefix, String type, String initializer) {
+		return constantNames.computeIfAbsent(type + " " + initializer, declaration -> {
+			var name = prefix + constantNames.size();
+			constants.append("\tprivate static final ").append(type).append(' ').append(name).append(" = ")
+					.append(initializer).append(";\n\n");
+			return name;
+		});
+	}
+
+	private String source(String oasFileName) {
+		return "package com.task11;\n\n"
+				+ "import java.util.ArrayList;\n"
+				+ "import java.util.List;\n"
+				+ "import java.util.Set;\n"
+				+ "import java.util.regex.Pattern;\n\n"
+				+ "// Generated from export/" + oasFileName + " by jsrc/build/OasValidatorGenerator.java, do not edit\n"
+				+ "final class RequestValidators {\n\n"
+				+ constants
+				+ "\tprivate RequestValidators() {\n\t}\n\n"
+				+ "\tstatic List<RequestValidation.Violation> validate(ApiHandler.APIRequest request) {\n"
+				+ "\t\tvar violations = new ArrayList<RequestValidation.Violation>();\n"
+				+ "\t\tswitch (request.method() + \" \" + request.path()) {\n"
+				+ cases
+				+ "\t\t\tdefault -> {\n\t\t\t}\n"
+				+ "\t\t}\n"
+				+ "\t\treturn violations;\n"
+				+ "\t}\n"
+				+ methods
+				+ "}\n";
+	}
+
+	private static String methodName(String method, String path) {
+		var name = new StringBuilder(method.toLowerCase(Locale.ROOT));
+		for (var segment : path.replaceAll("[{}]", "").split("[/_-]")) {
+			if (!segment.isEmpty()) {
+				name.append(Character.toUpperCase(segment.charAt(0))).append(segment.substring(1));
+			}
+		}
+		return name.toString();
+	}
+
+	// tableId -> table_id, the field name used by the request templates
+	private static String snakeCase(String name) {
+		return name.replaceAll("([a-z0-9])([A-Z])", "$1_$2").toLowerCase(Locale.ROOT);
+	}
+
+	private static String intLiteral(JsonNode schema, String keyword) {
+		return schema.has(keyword) ? String.valueOf(schema.path(keyword).asInt()) : "null";
+	}
+
+	private static String javaString(String value) {
+		return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+
+	private static IllegalStateException unsupported(String path, String what) {
+		return new IllegalStateException("Unsupported " + what + " in " + path);
+	}
+}
@@ -1,24 +1,52 @@
 package com.task11;
 
-import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
-import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
-import com.amazonaws.services.dynamodbv2.model.AttributeValue;
-import com.amazonaws.services.dynamodbv2.model.ScanRequest;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.syndicate.deployment.annotations.environment.EnvironmentVariable;
 import com.syndicate.deployment.annotations.environment.EnvironmentVariables;
 import com.syndicate.deployment.annotations.lambda.LambdaHandler;
 import com.syndicate.deployment.model.DeploymentRuntime;
 import com.syndicate.deployment.model.RetentionSetting;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
 import software.amazon.awssdk.regions.Region;
-import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderClient;
+import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderAsyncClient;
 import software.amazon.awssdk.services.cognitoidentityprovider.model.*;
-
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.CancellationReason;
+import software.amazon.awssdk.services.dynamodb.model.ConditionCheck;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.Put;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 @LambdaHandler(lambdaName = "api_handler",
 		roleName = "api_handler-role",
@@ -30,61 +58,306 @@ import java.util.*;
 		@EnvironmentVariable(key = "region", value = "${region}"),
 		@EnvironmentVariable(key = "tables_table", value = "${tables_table}"),
 		@EnvironmentVariable(key = "reservations_table", value = "${reservations_table}"),
-		@EnvironmentVariable(key = "booking_userpool", value = "${booking_userpool}")})
+		@EnvironmentVariable(key = "occupancy_table", value = "${occupancy_table}"),
+		@EnvironmentVariable(key = "idempotency_table", value = "${idempotency_table}"),
+		@EnvironmentVariable(key = "booking_userpool", value = "${booking_userpool}"),
+		@EnvironmentVariable(key = "export_bucket", value = "${export_bucket}"),
+		@EnvironmentVariable(key = "export_prefix", value = "${export_prefix}")})
 
 public class ApiHandler implements RequestHandler<ApiHandler.APIRequest, APIGatewayV2HTTPResponse> {
 
+	private static final Set<String> PUBLIC_PATHS = Set.of("/signup", "/signin");
+
+	// Cognito group (cognito:groups claim of the id token) a route requires on top of a valid token; anyone can
+	// sign up, so bulk and maintenance routes are limited to administrators
+	private static final String ADMIN_GROUP = "admin";
+
+	private static final Map<String, String> ROUTE_GROUPS = Map.of(
+			"/signup/import", ADMIN_GROUP,
+			"/tables/import", ADMIN_GROUP,
+			"/reservations/export", ADMIN_GROUP,
+			"/occupancy/rebuild", ADMIN_GROUP);
+
+	private static final String TABLE_NUMBER_INDEX = "number-index";
+
+	private static final String RESERVATION_TABLE_DATE_INDEX = "tableDate-index";
+
+	private static final int DEFAULT_PAGE_SIZE = 100;
+
+	private static final int MAX_PAGE_SIZE = 1000;
+
+	private static final int MAX_BOOKING_ATTEMPTS = 3;
+
+	private static final int MAX_IMPORT_SIZE = 1000;
+
+	private static final int IMPORT_PARALLELISM = 4;
+
+	private static final int DEFAULT_EXPORT_SEGMENTS = 8;
+
+	private static final int DEFAULT_SEARCH_RESULTS = 10;
+
+	private static final int SEARCH_BATCH_SIZE = 100;
+
+	private static final String TABLE_INDEX_KEY = "all";
+
+	private static final int TABLE_CACHE_SIZE = 1024;
+
+	private static final Duration TABLE_CACHE_TTL = Duration.ofMinutes(5);
+
+	private static final Duration TABLE_NEGATIVE_CACHE_TTL = Duration.ofSeconds(30);
+
+	private static final int TABLE_SCAN_SEGMENTS = 4;
+
+	// Whole request budget per route; API Gateway itself gives up after 29 s
+	private static final Duration DEFAULT_ROUTE_TIMEOUT = Duration.ofSeconds(10);
+
+	private static final Map<String, Duration> ROUTE_TIMEOUTS = Map.of(
+			"/signup", Duration.ofSeconds(5),
+			"/signin", Duration.ofSeconds(5),
+			"/signup/import", Duration.ofSeconds(25),
+			"/tables/import", Duration.ofSeconds(25),
+			// Large exports run as asynchronous invocations (see README), bounded by the Lambda timeout only
+			"/reservations/export", Duration.ofMinutes(14),
+			"/occupancy/rebuild", Duration.ofMinutes(14));
+
+	// Last moment to start a Cognito call in /signup/import: its 25 s route budget minus one full API call timeout
+	// and time to send the response, so a partial result is returned instead of a 504
+	private static final Duration USER_IMPORT_BUDGET = Duration.ofSeconds(18);
+
+	// A single stuck connection fails the call instead of eating the route budget
+	private static final ClientOverrideConfiguration SDK_TIMEOUTS = ClientOverrideConfiguration.builder()
+			.apiCallAttemptTimeout(Duration.ofSeconds(2))
+			.apiCallTimeout(Duration.ofSeconds(5))
+			.build();
+
 	private final ObjectMapper objectMapper = new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL);
 
-	private final AmazonDynamoDB amazonDynamoDB = AmazonDynamoDBClientBuilder.standard().withRegion(System.getenv("region")).build();
+	// Lambda environment variables; tests pass their own table names
+	private final Function<String, String> environment;
+
+	private final DynamoDbAsyncClient dynamoDbClient;
+
+	private final CognitoIdentityProviderAsyncClient identityProviderClient;
+
+	private final ExecutorService routeExecutor = Executors.newCachedThreadPool();
+
+	// Tables are written rarely and read on every booking, so warm containers serve them from memory
+	private final TtlCache<String, Table> tableCache = new TtlCache<>(TABLE_CACHE_SIZE, TABLE_CACHE_TTL, TABLE_NEGATIVE_CACHE_TTL);
+
+	private final TtlCache<String, String> tableIdByNumberCache = new TtlCache<>(TABLE_CACHE_SIZE, TABLE_CACHE_TTL, Duration.ZERO);
+
+	private final TtlCache<String, String> tablePageCache = new TtlCache<>(64, TABLE_CACHE_TTL, Duration.ZERO);
+
+	private final TtlCache<String, TableIndex> tableIndexCache = new TtlCache<>(1, TABLE_CACHE_TTL, Duration.ZERO);
+
+	private final ExecutorService importExecutor = Executors.newFixedThreadPool(IMPORT_PARALLELISM);
 
-	private final CognitoIdentityProviderClient identityProviderClient = CognitoIdentityProviderClient.builder().region(Region.of(System.getenv("region"))).build();
+	private final TableImporter tableImporter;
+
+	private final UserImporter userImporter = new UserImporter(importExecutor);
+
+	private final ReservationExporter reservationExporter;
+
+	private S3Client s3Client;
+
+	private final OccupancyLedger occupancyLedger;
+
+	private final OccupancyRebuilder occupancyRebuilder;
+
+	private final IdempotencyStore idempotencyStore;
+
+	private final UserPoolResolver userPoolResolver;
+
+	// JWKS is fetched once per container, so a warm request pays only for the RSA signature check
+	private final TokenVerifier tokenVerifier;
+
+	public ApiHandler() {
+		this(DynamoDbAsyncClient.builder()
+				.region(Region.of(System.getenv("region")))
+				.overrideConfiguration(SDK_TIMEOUTS)
+				.build(), System::getenv);
+	}
+
+	ApiHandler(DynamoDbAsyncClient dynamoDbClient, Function<String, String> environment) {
+		this.environment = environment;
+		this.dynamoDbClient = dynamoDbClient;
+		this.identityProviderClient = CognitoIdentityProviderAsyncClient.builder()
+				.region(Region.of(environment.apply("region")))
+				.overrideConfiguration(SDK_TIMEOUTS)
+				.build();
+		this.tableImporter = new TableImporter(dynamoDbClient, environment.apply("tables_table"), importExecutor, this::buildTableItem);
+		this.reservationExporter = new ReservationExporter(dynamoDbClient, environment.apply("reservations_table"),
+				objectMapper, this::buildReservationResponse);
+		this.occupancyLedger = new OccupancyLedger(dynamoDbClient, environment.apply("occupancy_table"),
+				environment.apply("reservations_table"), RESERVATION_TABLE_DATE_INDEX);
+		this.occupancyRebuilder = new OccupancyRebuilder(dynamoDbClient, environment.apply("reservations_table"),
+				occupancyLedger);
+		this.idempotencyStore = new IdempotencyStore(dynamoDbClient, environment.apply("idempotency_table"));
+		this.userPoolResolver = new UserPoolResolver(identityProviderClient, environment.apply("booking_userpool"));
+		this.tokenVerifier = new TokenVerifier(
+				() -> TokenVerifier.cognitoIssuer(environment.apply("region"), Futures.await(userPoolResolver.userPoolId())),
+				() -> Futures.await(userPoolResolver.appClientId()),
+				TokenVerifier.httpJwksLoader(),
+				() -> Instant.now().getEpochSecond());
+	}
 
 	public APIGatewayV2HTTPResponse handleRequest(APIRequest requestEvent, Context context) {
 		System.out.println("API request:" + requestEvent);
-		return switch(requestEvent.path()) {
-			case "/signup" -> {
-				var userPoolId = getUserPoolId();
-				yield signUpUser(requestEvent, userPoolId);
-			}
-			case "/signin" -> {
-				var userPoolId = getUserPoolId();
-				var clientId = createAppClient(userPoolId);
-				yield signInUser(requestEvent, userPoolId, clientId);
+		// Checked against the OpenAPI schemas before the token check and any other I/O
+		var violations = RequestValidators.validate(requestEvent);
+		if (!violations.isEmpty()) {
+			return invalidRequest(violations);
+		}
+		var timeout = ROUTE_TIMEOUTS.getOrDefault(requestEvent.path(), DEFAULT_ROUTE_TIMEOUT);
+		// The token check is part of the route budget: the first one in a container looks up the user pool and the JWKS
+		var response = routeExecutor.submit(() -> {
+			var authorization = PUBLIC_PATHS.contains(requestEvent.path()) ? Authorization.ANONYMOUS : authorize(requestEvent);
+			if (authorization.rejection() != null) {
+				return authorization.rejection();
 			}
+			return route(requestEvent, authorization.subject());
+		});
+		try {
+			return response.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			// Interrupts the route, which stops at its next DynamoDB or Cognito call (see Futures.await) instead of
+			// being frozen with the container and resuming on a later invocation. Calls already sent may still complete.
+			response.cancel(true);
+			System.err.println("Request to " + requestEvent.path() + " timed out after " + timeout);
+			return APIGatewayV2HTTPResponse.builder().withStatusCode(504).withHeaders(buildHeaders())
+					.withBody("ERROR request timed out").build();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return APIGatewayV2HTTPResponse.builder().withStatusCode(500).withHeaders(buildHeaders())
+					.withBody("ERROR request interrupted").build();
+		} catch (ExecutionException e) {
+			var cause = Futures.unwrap(e);
+			System.err.println("Error while handling " + requestEvent.path() + " " + cause.getMessage());
+			return APIGatewayV2HTTPResponse.builder().withStatusCode(500).withHeaders(buildHeaders())
+					.withBody("ERROR " + cause.getMessage()).build();
+		}
+	}
+
+	private APIGatewayV2HTTPResponse route(APIRequest requestEvent, String subject) {
+		return switch(requestEvent.path()) {
+			case "/signup" -> signUpUser(requestEvent);
+			case "/signup/import" -> importUsers(requestEvent);
+			case "/signin" -> signInUser(requestEvent);
 			case "/tables" -> {
 				if(requestEvent.method().equals("POST")) {
-					var tableObject = buildTableObject(requestEvent);
-					yield persistTable(tableObject);
+					yield idempotent(requestEvent, subject, () -> persistTable(buildTableObject(requestEvent)));
 				} else {
-					yield scanTable();
+					yield scanTable(requestEvent);
 				}
 			}
+			case "/tables/import" -> importTables(requestEvent);
+			case "/tables/search" -> searchTables(requestEvent);
+			case "/tables/availability" -> tableAvailability(requestEvent);
 			case "/reservations" -> {
 				if(requestEvent.method().equals("POST")) {
-					var reservationObject = buildReservationObject(requestEvent);
-					yield persistReservation(reservationObject);
+					yield idempotent(requestEvent, subject, () -> persistReservation(buildReservationObject(requestEvent)));
 				} else {
-					yield scanReservations();
+					yield scanReservations(requestEvent);
 				}
 			}
-			default -> {
-				System.out.println("Processing" +  requestEvent.authorization_header());
-				yield findTable(requestEvent.authorization_header());
-			}
+			case "/reservations/export" -> exportReservations(requestEvent);
+			case "/occupancy/rebuild" -> rebuildOccupancy(requestEvent);
+			case "/tables/{tableId}" -> findTable(requestEvent.table_id());
+			default -> APIGatewayV2HTTPResponse.builder().withStatusCode(404).withHeaders(buildHeaders())
+					.withBody("ERROR unknown path " + requestEvent.path()).build();
 		};
 	}
 
+	// {"message": "ERROR invalid request", "errors": [{"field": ..., "message": ...}]}
+	private APIGatewayV2HTTPResponse invalidRequest(List<RequestValidation.Violation> violations) {
+		System.err.println("Rejected request: " + violations);
+		var body = new LinkedHashMap<String, Object>();
+		body.put("message", "ERROR invalid request");
+		body.put("errors", violations);
+		try {
+			return APIGatewayV2HTTPResponse.builder().withStatusCode(400).withHeaders(buildHeaders())
+					.withBody(objectMapper.writeValueAsString(body)).build();
+		} catch (IOException e) {
+			return APIGatewayV2HTTPResponse.builder().withStatusCode(400).withHeaders(buildHeaders())
+					.withBody("ERROR invalid request " + violations).build();
+		}
+	}
+
+	// Either the verified caller (sub claim of the id token) or the response rejecting the request
+	private record Authorization(String subject, APIGatewayV2HTTPResponse rejection) {
+
+		static final Authorization ANONYMOUS = new Authorization(null, null);
+	}
+
+	// Verifies the Cognito id token locally, then the group the route requires
+	private Authorization authorize(APIRequest requestEvent) {
+		try {
+			var claims = tokenVerifier.verify(requestEvent.authorization_header());
+			var subject = claims.path("sub").asText();
+			var group = ROUTE_GROUPS.get(requestEvent.path());
+			if (group != null && !hasGroup(claims, group)) {
+				System.err.println("Rejected " + subject + " for " + requestEvent.path() + ": not in group " + group);
+				return new Authorization(null, APIGatewayV2HTTPResponse.builder().withStatusCode(403).withHeaders(buildHeaders())
+						.withBody("ERROR forbidden: requires group " + group).build());
+			}
+			System.out.println("Authorized " + subject);
+			return new Authorization(subject, null);
+		} catch (TokenVerifier.InvalidTokenException e) {
+			System.err.println("Rejected token: " + e.getMessage());
+			return new Authorization(null, APIGatewayV2HTTPResponse.builder().withStatusCode(401).withHeaders(buildHeaders())
+					.withBody("ERROR unauthorized: " + e.getMessage()).build());
+		} catch (Exception e) {
+			System.err.println("Error while verifying token " + e.getMessage());
+			return new Authorization(null, APIGatewayV2HTTPResponse.builder().withStatusCode(500).withHeaders(buildHeaders())
+					.withBody("ERROR could not verify token").build());
+		}
+	}
+
+	private static boolean hasGroup(JsonNode claims, String group) {
+		for (var member : claims.path("cognito:groups")) {
+			if (group.equals(member.asText())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// Runs a write once per caller and Idempotency-Key; requests without the header are executed as before
+	private APIGatewayV2HTTPResponse idempotent(APIRequest requestEvent, String subject, Supplier<APIGatewayV2HTTPResponse> write) {
+		var idempotencyKey = requestEvent.idempotency_key();
+		if (idempotencyKey == null || idempotencyKey.isBlank()) {
+			return write.get();
+		}
+		if (idempotencyKey.length() > 255) {
+			return APIGatewayV2HTTPResponse.builder().withStatusCode(400).withHeaders(buildHeaders())
+					.withBody("ERROR Idempotency-Key must not be longer than 255 characters").build();
+		}
+		var stored = idempotencyStore.execute(subject, requestEvent.method() + " " + requestEvent.path(), idempotencyKey,
+				IdempotencyStore.requestHash(requestEvent.body_json()), () -> {
+					var response = write.get();
+					return new IdempotencyStore.StoredResponse(response.getStatusCode(), response.getBody(), false);
+				});
+		var headers = buildHeaders();
+		if (stored.replayed()) {
+			headers.put("Idempotent-Replayed", "true");
+		}
+		return APIGatewayV2HTTPResponse.builder().withStatusCode(stored.statusCode()).withHeaders(headers)
+				.withBody(stored.body()).build();
+	}
+
 	private Table buildTableObject(APIRequest apiRequest) {
 		// Логгирование
 		System.out.println("Calling buildTableObject ...");
+		return buildTableObject(apiRequest.body_json());
+	}
 
+	private Table buildTableObject(Map<String, String> body) {
 		// Извлечение данных из JSON
-		String idString = apiRequest.body_json().get("id");
-		String numberString = apiRequest.body_json().get("number");
-		String placesString = apiRequest.body_json().get("places");
-		String isVipString = apiRequest.body_json().get("isVip");
-		String minOrderString = apiRequest.body_json().get("minOrder");
+		String idString = body.get("id");
+		String numberString = body.get("number");
+		String placesString = body.get("places");
+		String isVipString = body.get("isVip");
+		String minOrderString = body.get("minOrder");
 
 		// Преобразование данных
 		Integer id = Integer.valueOf(idString);
@@ -125,11 +398,11 @@ public class ApiHandler implements RequestHandler<ApiHandler.APIRequest, APIGate
 		AttributeValue minOrderValue = result.get("minOrder");
 
 		// Преобразование данных
-		Integer id = Integer.valueOf(idValue.getN());
-		Integer number = Integer.valueOf(numberValue.getN());
-		Integer places = Integer.valueOf(placesValue.getN());
-		Boolean isVip = isVipValue.getBOOL();
-		Integer minOrder = (minOrderValue != null) ? Integer.valueOf(minOrderValue.getN()) : null;
+		Integer id = Integer.valueOf(idValue.n());
+		Integer number = Integer.valueOf(numberValue.n());
+		Integer places = Integer.valueOf(placesValue.n());
+		Boolean isVip = isVipValue.bool();
+		Integer minOrder = (minOrderValue != null) ? Integer.valueOf(minOrderValue.n()) : null;
 
 		// Создание объекта Table
 		return new Table(id, number, places, isVip, minOrder);
@@ -146,62 +419,30 @@ public class ApiHandler implements RequestHandler<ApiHandler.APIRequest, APIGate
 		AttributeValue slotTimeEndValue = result.get("slotTimeEnd");
 
 		// Преобразование данных
-		Integer tableNumber = Integer.valueOf(tableNumberValue.getN());
-		String clientName = clientNameValue.getS();
-		String phoneNumber = phoneNumberValue.getS();
-		String date = dateValue.getS();
-		String slotTimeStart = slotTimeStartValue.getS();
-		String slotTimeEnd = slotTimeEndValue.getS();
+		Integer tableNumber = Integer.valueOf(tableNumberValue.n());
+		String clientName = clientNameValue.s();
+		String phoneNumber = phoneNumberValue.s();
+		String date = dateValue.s();
+		String slotTimeStart = slotTimeStartValue.s();
+		String slotTimeEnd = slotTimeEndValue.s();
 
 		// Создание объекта Reservation
 		return new Reservation(tableNumber, clientName, phoneNumber, date, slotTimeStart, slotTimeEnd);
 	}
 
 
-	private String createAppClient(String userPoolId) {
-		// Логгирование начала метода
-		System.out.println("Calling createAppClient ...");
-
-		// Создание запроса на создание клиента пула пользователей
-		CreateUserPoolClientRequest request = CreateUserPoolClientRequest.builder()
-				.userPoolId(userPoolId) // Устанавливаем ID пула пользователей
-				.explicitAuthFlows(ExplicitAuthFlowsType.ALLOW_ADMIN_USER_PASSWORD_AUTH,
-						ExplicitAuthFlowsType.ALLOW_REFRESH_TOKEN_AUTH) // Разрешаем определенные потоки авторизации
-				.clientName("api_client") // Устанавливаем имя клиента
-				.build();
-
-		// Отправка запроса на создание клиента
-		CreateUserPoolClientResponse result = identityProviderClient.createUserPoolClient(request);
-
-		// Логгирование результата
-		System.out.println("createAppClient " + result.userPoolClient().clientId());
-
-		// Возвращаем clientId
-		return result.userPoolClient().clientId();
-	}
-
-
-	private APIGatewayV2HTTPResponse signUpUser(APIRequest apiRequest, String userPoolId) {
+	private APIGatewayV2HTTPResponse signUpUser(APIRequest apiRequest) {
 		// Логгирование начала метода
 		System.out.println("Calling signUpUser ...");
 
 		try {
-			// Создаем список атрибутов пользователя
-			ArrayList<AttributeType> userAttributeList = new ArrayList<>();
-			String email = apiRequest.body_json().get("email"); // Получаем email из запроса
-			userAttributeList.add(AttributeType.builder().name("email").value(email).build()); // Добавляем email в атрибуты
-
-			// Создаем запрос на создание пользователя
-			AdminCreateUserRequest adminCreateUserRequest = AdminCreateUserRequest.builder()
-					.temporaryPassword(apiRequest.body_json().get("password")) // Получаем временный пароль
-					.userPoolId(userPoolId) // Устанавливаем ID пула пользователей
-					.username(email) // Устанавливаем имя пользователя (email)
-					.messageAction(MessageActionType.SUPPRESS) // Отключаем отправку сообщений
-					.userAttributes(userAttributeList) // Устанавливаем атрибуты пользователя
-					.build();
-
-			// Отправляем запрос на создание пользователя
-			identityProviderClient.adminCreateUser(adminCreateUserRequest);
+			try {
+				createUser(apiRequest, Futures.await(userPoolResolver.userPoolId()));
+			} catch (ResourceNotFoundException e) {
+				// Пул мог быть пересоздан - сбрасываем кэш и повторяем один раз
+				userPoolResolver.invalidate();
+				createUser(apiRequest, Futures.await(userPoolResolver.userPoolId()));
+			}
 
 			// Логгирование успешного создания пользователя
 			System.out.println("User has been created");
@@ -224,13 +465,80 @@ public class ApiHandler implements RequestHandler<ApiHandler.APIRequest, APIGate
 		}
 	}
 
+	private void createUser(APIRequest apiRequest, String userPoolId) {
+		createUser(apiRequest.body_json(), userPoolId);
+	}
+
+	private void createUser(Map<String, String> user, String userPoolId) {
+		// Создаем список атрибутов пользователя
+		ArrayList<AttributeType> userAttributeList = new ArrayList<>();
+		String email = user.get("email"); // Получаем email из запроса
+		userAttributeList.add(AttributeType.builder().name("email").value(email).build()); // Добавляем email в атрибуты
+
+		// Создаем запрос на создание пользователя
+		AdminCreateUserRequest adminCreateUserRequest = AdminCreateUserRequest.builder()
+				.temporaryPassword(user.get("password")) // Получаем временный пароль
+				.userPoolId(userPoolId) // Устанавливаем ID пула пользователей
+				.username(email) // Устанавливаем имя пользователя (email)
+				.messageAction(MessageActionType.SUPPRESS) // Отключаем отправку сообщений
+				.userAttributes(userAttributeList) // Устанавливаем атрибуты пользователя
+				.build();
+
+		// Отправляем запрос на создание пользователя
+		Futures.await(identityProviderClient.adminCreateUser(adminCreateUserRequest));
+	}
+
+
+	// Bulk sign-up: users are created in parallel under the adaptive rate limit of UserImporter
+	private APIGatewayV2HTTPResponse importUsers(APIRequest apiRequest) {
+		System.out.println("Calling importUsers ...");
+		try {
+			var items = Objects.requireNonNullElse(apiRequest.body_items(), List.<Map<String, String>>of());
+			if (items.isEmpty() || items.size() > UserImporter.MAX_USERS) {
+				throw new IllegalArgumentException("users must contain between 1 and " + UserImporter.MAX_USERS + " items");
+			}
+			var userPoolId = Futures.await(userPoolResolver.userPoolId());
+
+			// Неполные записи и повторы email попадают в отчет и не отправляются в Cognito
+			var results = new ImportResult[items.size()];
+			var users = new ArrayList<Map<String, String>>();
+			var positions = new ArrayList<Integer>();
+			var seenEmails = new HashSet<String>();
+			for (int i = 0; i < items.size(); i++) {
+				var item = items.get(i);
+				var email = item.get("email");
+				if (email == null || email.isBlank() || item.get("password") == null || item.get("password").isBlank()) {
+					results[i] = new ImportResult(email, "FAILED", "email and password are required");
+				} else if (!seenEmails.add(email.toLowerCase(Locale.ROOT))) {
+					results[i] = new ImportResult(email, "FAILED", "duplicate email in request");
+				} else {
+					users.add(item);
+					positions.add(i);
+				}
+			}
+
+			var deadline = System.nanoTime() + USER_IMPORT_BUDGET.toNanos();
+			var created = userImporter.importUsers(users, user -> createUser(user, userPoolId), deadline);
+			for (int i = 0; i < created.size(); i++) {
+				results[positions.get(i)] = created.get(i);
+			}
+			System.out.println("Imported " + created.stream().filter(result -> "CREATED".equals(result.status())).count()
+					+ " of " + items.size() + " users, " + created.stream().filter(result -> "UNPROCESSED".equals(result.status())).count()
+					+ " left unprocessed");
+			return APIGatewayV2HTTPResponse.builder().withStatusCode(200).withHeaders(buildHeaders())
+					.withBody(objectMapper.writeValueAsString(Map.of("results", Arrays.asList(results)))).build();
+		} catch (Exception e) {
+			System.err.println("Error while importing users " + e.getMessage());
+			return APIGatewayV2HTTPResponse.builder().withStatusCode(400).withHeaders(buildHeaders()).withBody("ERROR " + e.getMessage()).build();
+		}
+	}
 
 	private Map<String, String> buildHeaders() {
 		// Создаем новую карту для хранения заголовков
 		HashMap<String, String> map = new HashMap<>();
 
 		// Добавляем заголовки в карту
-		map.put("Access-Control-Allow-Headers", "Content-Type,X-Amz-Date,Authorization,X-Api-Key,X-Amz-Security-Token");
+		map.put("Access-Control-Allow-Headers", "Content-Type,X-Amz-Date,Authorization,X-Api-Key,X-Amz-Security-Token,Idempotency-Key");
 		map.put("Access-Control-Allow-Origin", "*"); // Разрешаем доступ с любого источника
 		map.put("Access-Control-Allow-Methods", "*"); // Разрешаем любые методы
 		map.put("Accept-Version", "*"); // Указываем, что все версии приемлемы
@@ -240,46 +548,18 @@ public class ApiHandler implements RequestHandler<ApiHandler.APIRequest, APIGate
 	}
 
 
-	private APIGatewayV2HTTPResponse signInUser(APIRequest apiRequest, String userPoolId, String clientId) {
+	private APIGatewayV2HTTPResponse signInUser(APIRequest apiRequest) {
 		// Логгирование начала процесса входа
 		System.out.println("Calling signInUser ...");
 
-		// Подготовка запроса на аутентификацию
-		Map<String, String> authParameters = new HashMap<>();
-		authParameters.put("USERNAME", apiRequest.body_json().get("email")); // Получаем email
-		authParameters.put("PASSWORD", apiRequest.body_json().get("password")); // Получаем пароль
-
-		var authRequest = AdminInitiateAuthRequest.builder()
-				.authFlow("ADMIN_USER_PASSWORD_AUTH") // Тип аутентификации
-				.authParameters(authParameters) // Параметры аутентификации
-				.userPoolId(userPoolId) // ID пула пользователей
-				.clientId(clientId) // ID клиента
-				.build();
-
 		try {
-			// Выполняем аутентификацию
-			var authResponse = identityProviderClient.adminInitiateAuth(authRequest);
-			System.out.println("Auth response: " + authResponse + " session: " + authResponse.session());
-
-			var authResult = authResponse.authenticationResult(); // Получаем результат аутентификации
-
-			// Если требуется новый пароль, обрабатываем вызов для изменения пароля
-			if (authResponse.challengeName() != null && authResponse.challengeName().equals(ChallengeNameType.NEW_PASSWORD_REQUIRED)) {
-				// Отправляем новый пароль
-				var challengeResponse = identityProviderClient.adminRespondToAuthChallenge(AdminRespondToAuthChallengeRequest.builder()
-						.userPoolId(userPoolId)
-						.clientId(clientId)
-						.session(authResponse.session()) // Используем сессию из предыдущего ответа
-						.challengeName(ChallengeNameType.NEW_PASSWORD_REQUIRED) // Указываем, что пароль нужно обновить
-						.challengeResponses(Map.of(
-								"NEW_PASSWORD", apiRequest.body_json().get("password"), // Новый пароль
-								"USERNAME", apiRequest.body_json().get("email") // Email пользователя
-						))
-						.build());
-
-				// Обновленный результат аутентификации
-				System.out.println("Challenge passed: " + challengeResponse.authenticationResult().idToken());
-				authResult = challengeResponse.authenticationResult(); // Получаем результат после обновления пароля
+			AuthenticationResultType authResult;
+			try {
+				authResult = authenticate(apiRequest);
+			} catch (ResourceNotFoundException e) {
+				// Пул или клиент были удалены - сбрасываем кэш и повторяем один раз
+				userPoolResolver.invalidate();
+				authResult = authenticate(apiRequest);
 			}
 
 			// Возвращаем успешный ответ с полученным токеном
@@ -299,40 +579,50 @@ public class ApiHandler implements RequestHandler<ApiHandler.APIRequest, APIGate
 		}
 	}
 
+	private AuthenticationResultType authenticate(APIRequest apiRequest) {
+		// Оба значения берутся из одного запроса к пулу; клиент разрешается сразу, как только известен пул
+		var userPoolIdFuture = userPoolResolver.userPoolId();
+		var clientIdFuture = userPoolResolver.appClientId();
+		String userPoolId = Futures.await(userPoolIdFuture);
+		String clientId = Futures.await(clientIdFuture);
 
-	private String getUserPoolId() {
-		// Логгируем начало метода
-		System.out.println("Calling getUserPoolId ...");
-
-		// По умолчанию устанавливаем значение для ID пула пользователя
-		String userPoolId = "test-id"; // Это значение будет использоваться, если пул не найден
-
-		try {
-			// Создаем запрос для получения списка пулов пользователей
-			var request = ListUserPoolsRequest.builder().maxResults(50).build();
-
-			// Отправляем запрос в клиент идентификации
-			var response = identityProviderClient.listUserPools(request);
-
-			// Ищем пул по имени, которое указано в переменной окружения
-			for (var userPool : response.userPools()) {
-				if (userPool.name().equals(System.getenv("booking_userpool"))) {
-					// Если нашли пул с нужным именем, присваиваем его ID
-					userPoolId = userPool.id();
-					break; // Выход из цикла, так как нужный пул найден
-				}
-			}
+		// Подготовка запроса на аутентификацию
+		Map<String, String> authParameters = new HashMap<>();
+		authParameters.put("USERNAME", apiRequest.body_json().get("email")); // Получаем email
+		authParameters.put("PASSWORD", apiRequest.body_json().get("password")); // Получаем пароль
 
-			// Логгируем найденный ID пула
-			System.out.println("User pool id: " + userPoolId);
+		var authRequest = AdminInitiateAuthRequest.builder()
+				.authFlow("ADMIN_USER_PASSWORD_AUTH") // Тип аутентификации
+				.authParameters(authParameters) // Параметры аутентификации
+				.userPoolId(userPoolId) // ID пула пользователей
+				.clientId(clientId) // ID клиента
+				.build();
 
-		} catch (CognitoIdentityProviderException e) {
-			// Логгируем ошибку, если запрос не удался
-			System.err.println("Error while listing the user pools: " + e.awsErrorDetails().errorMessage());
+		// Выполняем аутентификацию
+		var authResponse = Futures.await(identityProviderClient.adminInitiateAuth(authRequest));
+		System.out.println("Auth response: " + authResponse + " session: " + authResponse.session());
+
+		var authResult = authResponse.authenticationResult(); // Получаем результат аутентификации
+
+		// Если требуется новый пароль, обрабатываем вызов для изменения пароля
+		if (authResponse.challengeName() != null && authResponse.challengeName().equals(ChallengeNameType.NEW_PASSWORD_REQUIRED)) {
+			// Отправляем новый пароль
+			var challengeResponse = Futures.await(identityProviderClient.adminRespondToAuthChallenge(AdminRespondToAuthChallengeRequest.builder()
+					.userPoolId(userPoolId)
+					.clientId(clientId)
+					.session(authResponse.session()) // Используем сессию из предыдущего ответа
+					.challengeName(ChallengeNameType.NEW_PASSWORD_REQUIRED) // Указываем, что пароль нужно обновить
+					.challengeResponses(Map.of(
+							"NEW_PASSWORD", apiRequest.body_json().get("password"), // Новый пароль
+							"USERNAME", apiRequest.body_json().get("email") // Email пользователя
+					))
+					.build()));
+
+			// Обновленный результат аутентификации
+			System.out.println("Challenge passed: " + challengeResponse.authenticationResult().idToken());
+			authResult = challengeResponse.authenticationResult(); // Получаем результат после обновления пароля
 		}
-
-		// Возвращаем ID пула пользователя
-		return userPoolId;
+		return authResult;
 	}
 
 
@@ -341,22 +631,17 @@ public class ApiHandler implements RequestHandler<ApiHandler.APIRequest, APIGate
 		System.out.println("Calling persistTable ...");
 
 		try {
-			// Создаем карту атрибутов для записи в DynamoDB
-			Map<String, AttributeValue> attributesMap = new HashMap<>();
-
-			// Добавляем атрибуты для таблицы
-			attributesMap.put("id", new AttributeValue().withN(String.valueOf(table.id())));
-			attributesMap.put("number", new AttributeValue().withN(String.valueOf(table.number())));
-			attributesMap.put("places", new AttributeValue().withN(String.valueOf(table.places())));
-			attributesMap.put("isVip", new AttributeValue().withBOOL(table.isVip()));
-
-			// Если minOrder существует, добавляем его в карту
-			if (table.minOrder() != null) {
-				attributesMap.put("minOrder", new AttributeValue().withN(String.valueOf(table.minOrder())));
-			}
-
 			// Отправляем данные в DynamoDB
-			amazonDynamoDB.putItem(System.getenv("tables_table"), attributesMap);
+			Futures.await(dynamoDbClient.putItem(PutItemRequest.builder()
+					.tableName(environment.apply("tables_table"))
+					.item(buildTableItem(table))
+					.build()));
+
+			// Обновляем кэш каталога: номер стола мог измениться, страницы списка устарели
+			tableCache.put(String.valueOf(table.id()), table);
+			tableIdByNumberCache.invalidateAll();
+			tablePageCache.invalidateAll();
+			tableIndexCache.invalidateAll();
 
 			// Возвращаем успешный ответ с ID таблицы
 			return APIGatewayV2HTTPResponse.builder()
@@ -371,7 +656,7 @@ public class ApiHandler implements RequestHandler<ApiHandler.APIRequest, APIGate
 
 			// Возвращаем ошибку в ответе
 			return APIGatewayV2HTTPResponse.builder()
-					.withStatusCode(400)
+					.withStatusCode(errorStatus(e))
 					.withHeaders(buildHeaders())
 					.withBody("ERROR: " + e.getMessage())
 					.build();
@@ -379,13 +664,194 @@ public class ApiHandler implements RequestHandler<ApiHandler.APIRequest, APIGate
 	}
 
 
-	private APIGatewayV2HTTPResponse scanTable() {
+	private Map<String, AttributeValue> buildTableItem(Table table) {
+		// Создаем карту атрибутов для записи в DynamoDB
+		Map<String, AttributeValue> attributesMap = new HashMap<>();
+
+		// Добавляем атрибуты для таблицы
+		attributesMap.put("id", AttributeValue.builder().n(String.valueOf(table.id())).build());
+		attributesMap.put("number", AttributeValue.builder().n(String.valueOf(table.number())).build());
+		attributesMap.put("places", AttributeValue.builder().n(String.valueOf(table.places())).build());
+		attributesMap.put("isVip", AttributeValue.builder().bool(table.isVip()).build());
+
+		// Если minOrder существует, добавляем его в карту
+		if (table.minOrder() != null) {
+			attributesMap.put("minOrder", AttributeValue.builder().n(String.valueOf(table.minOrder())).build());
+		}
+		return attributesMap;
+	}
+
+	private APIGatewayV2HTTPResponse importTables(APIRequest apiRequest) {
+		System.out.println("Calling importTables ...");
+		try {
+			var items = Objects.requireNonNullElse(apiRequest.body_items(), List.<Map<String, String>>of());
+			if (items.isEmpty() || items.size() > MAX_IMPORT_SIZE) {
+				throw new IllegalArgumentException("tables must contain between 1 and " + MAX_IMPORT_SIZE + " items");
+			}
+
+			// Разбираем все элементы заранее: ошибки разбора и повторы id попадают в отчет, а не ломают весь импорт
+			var results = new ArrayList<ImportResult>();
+			var tables = new ArrayList<Table>();
+			var seenIds = new HashSet<String>();
+			for (var item : items) {
+				try {
+					var table = buildTableObject(item);
+					if (!seenIds.add(String.valueOf(table.id()))) {
+						results.add(new ImportResult(item.get("id"), "FAILED", "duplicate id in request"));
+						continue;
+					}
+					tables.add(table);
+					results.add(new ImportResult(String.valueOf(table.id()), "CREATED", null));
+				} catch (RuntimeException e) {
+					results.add(new ImportResult(item.get("id"), "FAILED", "invalid table: " + e.getMessage()));
+				}
+			}
+
+			var failures = tableImporter.importTables(tables);
+			tables.stream()
+					.filter(table -> !failures.containsKey(String.valueOf(table.id())))
+					.forEach(table -> tableCache.put(String.valueOf(table.id()), table));
+			tableIdByNumberCache.invalidateAll();
+			tablePageCache.invalidateAll();
+			tableIndexCache.invalidateAll();
+			System.out.println("Imported " + (tables.size() - failures.size()) + " of " + items.size() + " tables");
+
+			var report = results.stream()
+					.map(result -> failures.containsKey(result.id()) && "CREATED".equals(result.status())
+							? new ImportResult(result.id(), "FAILED", failures.get(result.id()))
+							: result)
+					.toList();
+			return APIGatewayV2HTTPResponse.builder().withStatusCode(200).withHeaders(buildHeaders())
+					.withBody(objectMapper.writeValueAsString(Map.of("results", report))).build();
+		} catch (Exception e) {
+			System.err.println("Error while importing tables " + e.getMessage());
+			return APIGatewayV2HTTPResponse.builder().withStatusCode(400).withHeaders(buildHeaders()).withBody("ERROR " + e.getMessage()).build();
+		}
+	}
+
+	// Best fit search: smallest tables that seat the party and are free for the whole slot
+	private APIGatewayV2HTTPResponse searchTables(APIRequest apiRequest) {
+		try {
+			var queryParams = Objects.requireNonNullElse(apiRequest.query_params(), Map.<String, String>of());
+			int partySize = Integer.parseInt(requiredParam(queryParams, "partySize"));
+			var date = requiredParam(queryParams, "date");
+			var slot = TimeSlot.parse(requiredParam(queryParams, "slotTimeStart"), requiredParam(queryParams, "slotTimeEnd"));
+			var vip = optionalParam(queryParams, "vip") == null ? null : Boolean.valueOf(queryParams.get("vip"));
+			var maxMinOrder = optionalParam(queryParams, "maxMinOrder") == null ? null : Integer.valueOf(queryParams.get("maxMinOrder"));
+			int limit = optionalParam(queryParams, "limit") == null ? DEFAULT_SEARCH_RESULTS : parsePageSize(queryParams.get("limit"));
+
+			var tableIndex = tableIndexCache.get(TABLE_INDEX_KEY, key -> TableIndex.of(loadAllTables())).orElseThrow();
+			var freeTables = new ArrayList<Table>();
+			var batch = new ArrayList<Table>();
+			for (var candidate : tableIndex.candidates(partySize, vip, maxMinOrder)) {
+				batch.add(candidate);
+				if (batch.size() == SEARCH_BATCH_SIZE) {
+					collectFreeTables(batch, date, slot, freeTables, limit);
+					if (freeTables.size() >= limit) {
+						break;
+					}
+					batch.clear();
+				}
+			}
+			if (freeTables.size() < limit) {
+				collectFreeTables(batch, date, slot, freeTables, limit);
+			}
+			return APIGatewayV2HTTPResponse.builder().withStatusCode(200).withHeaders(buildHeaders())
+					.withBody(objectMapper.writeValueAsString(Map.of("tables", freeTables))).build();
+		} catch (Exception e) {
+			System.err.println("Error while searching tables " + e.getMessage());
+			return APIGatewayV2HTTPResponse.builder().withStatusCode(400).withHeaders(buildHeaders()).withBody("ERROR " + e.getMessage()).build();
+		}
+	}
+
+	// Checks one batch of candidates against their day ledgers with a single BatchGetItem, keeping the best fit order
+	private void collectFreeTables(List<Table> batch, String date, TimeSlot slot, List<Table> freeTables, int limit) {
+		if (batch.isEmpty()) {
+			return;
+		}
+		var tableDates = batch.stream().map(table -> table.number() + "#" + date).toList();
+		var bookedSlots = Futures.await(occupancyLedger.readDays(tableDates));
+		for (var table : batch) {
+			var booked = bookedSlots.getOrDefault(table.number() + "#" + date, List.of());
+			if (booked.stream().noneMatch(slot::overlaps)) {
+				freeTables.add(table);
+				if (freeTables.size() >= limit) {
+					return;
+				}
+			}
+		}
+	}
+
+	// Every table with a free flag for the slot: one bitmap per table and day, compared with a couple of ANDs
+	private APIGatewayV2HTTPResponse tableAvailability(APIRequest apiRequest) {
+		try {
+			var queryParams = Objects.requireNonNullElse(apiRequest.query_params(), Map.<String, String>of());
+			var date = requiredParam(queryParams, "date");
+			var requested = OccupancyBitmap.of(TimeSlot.parse(requiredParam(queryParams, "slotTimeStart"), requiredParam(queryParams, "slotTimeEnd")));
+
+			var tables = new ArrayList<Table>();
+			tableIndexCache.get(TABLE_INDEX_KEY, key -> TableIndex.of(loadAllTables())).orElseThrow().all().forEach(tables::add);
+			tables.sort(Comparator.comparing(table -> table.number().intValue()));
+			var bitmaps = Futures.await(occupancyLedger.readBitmaps(tables.stream().map(table -> table.number() + "#" + date).toList()));
+			var availability = new ArrayList<TableAvailability>(tables.size());
+			for (var table : tables) {
+				var booked = bitmaps.getOrDefault(table.number() + "#" + date, OccupancyBitmap.EMPTY);
+				availability.add(new TableAvailability(table.number(), table.places(), table.isVip(), table.minOrder(), !booked.intersects(requested)));
+			}
+			return APIGatewayV2HTTPResponse.builder().withStatusCode(200).withHeaders(buildHeaders())
+					.withBody(objectMapper.writeValueAsString(Map.of("tables", availability))).build();
+		} catch (Exception e) {
+			System.err.println("Error while reading table availability " + e.getMessage());
+			return APIGatewayV2HTTPResponse.builder().withStatusCode(400).withHeaders(buildHeaders()).withBody("ERROR " + e.getMessage()).build();
+		}
+	}
+
+	// Parallel scan: the segments are read concurrently, so loading the catalog takes about one segment's time
+	private List<Table> loadAllTables() {
+		var segments = new ArrayList<CompletableFuture<List<Table>>>();
+		for (int segment = 0; segment < TABLE_SCAN_SEGMENTS; segment++) {
+			var segmentTables = new ArrayList<Table>();
+			var scanRequest = ScanRequest.builder()
+					.tableName(environment.apply("tables_table"))
+					.segment(segment)
+					.totalSegments(TABLE_SCAN_SEGMENTS)
+					.build();
+			segments.add(dynamoDbClient.scanPaginator(scanRequest).items()
+					.subscribe(item -> segmentTables.add(buildTableResponse(item)))
+					.thenApply(done -> segmentTables));
+		}
+		var tables = new ArrayList<Table>();
+		segments.forEach(segment -> tables.addAll(Futures.await(segment)));
+		System.out.println("Loaded " + tables.size() + " tables into the search index");
+		return tables;
+	}
+
+	private String requiredParam(Map<String, String> queryParams, String name) {
+		var value = optionalParam(queryParams, name);
+		if (value == null) {
+			throw new IllegalArgumentException(name + " is required");
+		}
+		return value;
+	}
+
+	// Request templates pass absent query parameters as empty strings
+	private String optionalParam(Map<String, String> queryParams, String name) {
+		var value = queryParams.get(name);
+		return value == null || value.isBlank() ? null : value;
+	}
+
+	private APIGatewayV2HTTPResponse scanTable(APIRequest apiRequest) {
 		try {
-			var tableList = amazonDynamoDB.scan(new ScanRequest(System.getenv("tables_table")))
-					.getItems().stream().map(this::buildTableResponse).toList();
-			System.out.println("Table scan: " + tableList);
-			var apiResponse = new TableResponse(tableList);
-			return APIGatewayV2HTTPResponse.builder().withStatusCode(200).withHeaders(buildHeaders()).withBody(objectMapper.writeValueAsString(apiResponse)).build();
+			var queryParams = Objects.requireNonNullElse(apiRequest.query_params(), Map.<String, String>of());
+			var pageKey = queryParams.get("limit") + "|" + queryParams.get("cursor");
+			var body = tablePageCache.get(pageKey, key -> {
+				try {
+					return writeScanPage(environment.apply("tables_table"), "tables", apiRequest, this::buildTableResponse);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}).orElseThrow();
+			return APIGatewayV2HTTPResponse.builder().withStatusCode(200).withHeaders(buildHeaders()).withBody(body).build();
 		} catch (Exception e) {
 			System.err.println("Error while scanning table " + e.getMessage());
 			return APIGatewayV2HTTPResponse.builder().withStatusCode(400).withHeaders(buildHeaders()).withBody("ERROR " + e.getMessage()).build();
@@ -394,74 +860,286 @@ public class ApiHandler implements RequestHandler<ApiHandler.APIRequest, APIGate
 
 	private APIGatewayV2HTTPResponse findTable(String tableId) {
 		try {
-			var attributesMap = new HashMap<String, AttributeValue>();
-			attributesMap.put("id", new AttributeValue().withN(String.valueOf(tableId)));
-			var result = amazonDynamoDB.getItem(System.getenv("tables_table"), attributesMap).getItem();
-			var tableResult = buildTableResponse(result);
-			System.out.println("Table find result: " + result);
-			return APIGatewayV2HTTPResponse.builder().withStatusCode(200).withHeaders(buildHeaders()).withBody(objectMapper.writeValueAsString(tableResult)).build();
+			var tableResult = tableCache.get(tableId, this::loadTable);
+			System.out.println("Table find result: " + tableResult);
+			if (tableResult.isEmpty()) {
+				return APIGatewayV2HTTPResponse.builder().withStatusCode(404).withHeaders(buildHeaders()).withBody("ERROR table " + tableId + " not found").build();
+			}
+			return APIGatewayV2HTTPResponse.builder().withStatusCode(200).withHeaders(buildHeaders()).withBody(objectMapper.writeValueAsString(tableResult.get())).build();
 		} catch (Exception e) {
 			System.err.println("Error while finding table " + e.getMessage());
 			return APIGatewayV2HTTPResponse.builder().withStatusCode(400).withHeaders(buildHeaders()).withBody("ERROR " + e.getMessage()).build();
 		}
 	}
 
-	private APIGatewayV2HTTPResponse scanReservations() {
+	private Table loadTable(String tableId) {
+		var attributesMap = new HashMap<String, AttributeValue>();
+		attributesMap.put("id", AttributeValue.builder().n(String.valueOf(tableId)).build());
+		var result = Futures.await(dynamoDbClient.getItem(GetItemRequest.builder()
+				.tableName(environment.apply("tables_table"))
+				.key(attributesMap)
+				.build()));
+		return result.hasItem() ? buildTableResponse(result.item()) : null;
+	}
+
+	private APIGatewayV2HTTPResponse scanReservations(APIRequest apiRequest) {
 		try {
-			var reservationList = amazonDynamoDB.scan(new ScanRequest(System.getenv("reservations_table")))
-					.getItems().stream().map(this::buildReservationResponse).toList();
-			var apiResponse = new ReservationResponse(reservationList);
-			System.out.println("Reservation scan: " + reservationList);
-			return APIGatewayV2HTTPResponse.builder().withStatusCode(200).withHeaders(buildHeaders()).withBody(objectMapper.writeValueAsString(apiResponse)).build();
+			var body = writeScanPage(environment.apply("reservations_table"), "reservations", apiRequest, this::buildReservationResponse);
+			return APIGatewayV2HTTPResponse.builder().withStatusCode(200).withHeaders(buildHeaders()).withBody(body).build();
 		} catch (Exception e) {
 			System.err.println("Error while scanning table " + e.getMessage());
 			return APIGatewayV2HTTPResponse.builder().withStatusCode(400).withHeaders(buildHeaders()).withBody("ERROR " + e.getMessage()).build();
 		}
 	}
 
-	private APIGatewayV2HTTPResponse persistReservation(Reservation reservation) {
+	// Writes {"<itemsField>": [...], "nextCursor": "..."} item by item as scan pages arrive,
+	// so at most one DynamoDB page is held in memory besides the serialized body
+	private String writeScanPage(String tableName, String itemsField, APIRequest apiRequest,
+								 Function<Map<String, AttributeValue>, ?> itemMapper) throws IOException {
+		var queryParams = Objects.requireNonNullElse(apiRequest.query_params(), Map.<String, String>of());
+		int remaining = parsePageSize(queryParams.get("limit"));
+		var exclusiveStartKey = PageCursor.decode(queryParams.get("cursor"));
+		var writer = new StringWriter();
+		try (var generator = objectMapper.createGenerator(writer)) {
+			generator.writeStartObject();
+			generator.writeArrayFieldStart(itemsField);
+			do {
+				var result = Futures.await(dynamoDbClient.scan(ScanRequest.builder()
+						.tableName(tableName)
+						.limit(remaining)
+						.exclusiveStartKey(exclusiveStartKey)
+						.build()));
+				for (var item : result.items()) {
+					objectMapper.writeValue(generator, itemMapper.apply(item));
+				}
+				remaining -= result.count();
+				exclusiveStartKey = result.lastEvaluatedKey();
+			} while (remaining > 0 && exclusiveStartKey != null && !exclusiveStartKey.isEmpty());
+			generator.writeEndArray();
+			var nextCursor = PageCursor.encode(exclusiveStartKey);
+			if (nextCursor != null) {
+				generator.writeStringField("nextCursor", nextCursor);
+			}
+			generator.writeEndObject();
+		}
+		return writer.toString();
+	}
+
+	private int parsePageSize(String limit) {
+		if (limit == null || limit.isBlank()) {
+			return DEFAULT_PAGE_SIZE;
+		}
+		int pageSize = Integer.parseInt(limit.trim());
+		if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+			throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+		}
+		return pageSize;
+	}
+
+	private APIGatewayV2HTTPResponse exportReservations(APIRequest apiRequest) {
+		System.out.println("Calling exportReservations ...");
+		try {
+			var body = Objects.requireNonNullElse(apiRequest.body_json(), Map.<String, String>of());
+			var name = body.getOrDefault("name", "reservations-" + Instant.now().toEpochMilli() + ".ndjson.gz");
+			int segments = body.containsKey("segments") ? Integer.parseInt(body.get("segments")) : DEFAULT_EXPORT_SEGMENTS;
+			var sink = ExportSink.open(s3Client(), environment.apply("export_bucket"), environment.apply("export_prefix"), name);
+			var result = reservationExporter.export(sink, segments);
+			System.out.println("Exported " + result.records() + " reservations as " + name);
+			return APIGatewayV2HTTPResponse.builder().withStatusCode(200).withHeaders(buildHeaders())
+					.withBody(objectMapper.writeValueAsString(result)).build();
+		} catch (Exception e) {
+			System.err.println("Error while exporting reservations " + e.getMessage());
+			return APIGatewayV2HTTPResponse.builder().withStatusCode(400).withHeaders(buildHeaders()).withBody("ERROR " + e.getMessage()).build();
+		}
+	}
+
+	private APIGatewayV2HTTPResponse rebuildOccupancy(APIRequest apiRequest) {
+		System.out.println("Calling rebuildOccupancy ...");
+		try {
+			var body = Objects.requireNonNullElse(apiRequest.body_json(), Map.<String, String>of());
+			int segments = body.containsKey("segments") ? Integer.parseInt(body.get("segments")) : DEFAULT_EXPORT_SEGMENTS;
+			var result = occupancyRebuilder.rebuild(segments);
+			System.out.println("Rebuilt occupancy of " + result.days() + " table days");
+			return APIGatewayV2HTTPResponse.builder().withStatusCode(200).withHeaders(buildHeaders())
+					.withBody(objectMapper.writeValueAsString(result)).build();
+		} catch (Exception e) {
+			System.err.println("Error while rebuilding occupancy " + e.getMessage());
+			return APIGatewayV2HTTPResponse.builder().withStatusCode(400).withHeaders(buildHeaders()).withBody("ERROR " + e.getMessage()).build();
+		}
+	}
+
+	// Created on first export only, most invocations never touch S3
+	private synchronized S3Client s3Client() {
+		if (s3Client == null) {
+			s3Client = S3Client.builder().region(Region.of(environment.apply("region"))).build();
+		}
+		return s3Client;
+	}
+
+	APIGatewayV2HTTPResponse persistReservation(Reservation reservation) {
 		System.out.println("Calling persistReservation ..." );
 		try {
-			if(validateTable(reservation) && validateReservation(reservation)) {
-				var attributesMap = new HashMap<String, AttributeValue>();
-				attributesMap.put("id", new AttributeValue(UUID.randomUUID().toString()));
-				attributesMap.put("tableNumber", new AttributeValue().withN(String.valueOf(reservation.tableNumber())));
-				attributesMap.put("clientName", new AttributeValue(String.valueOf(reservation.clientName())));
-				attributesMap.put("phoneNumber", new AttributeValue(String.valueOf(reservation.phoneNumber())));
-				attributesMap.put("date", new AttributeValue(reservation.date()));
-				attributesMap.put("slotTimeStart", new AttributeValue(String.valueOf(reservation.slotTimeStart())));
-				attributesMap.put("slotTimeEnd", new AttributeValue(String.valueOf(reservation.slotTimeEnd())));
-				amazonDynamoDB.putItem(System.getenv("reservations_table"), attributesMap);
-				return APIGatewayV2HTTPResponse.builder().withStatusCode(200).withHeaders(buildHeaders()).withBody(UUID.randomUUID().toString()).build();
-			} else {
-				return APIGatewayV2HTTPResponse.builder().withStatusCode(400).withBody("ERROR, there is already a reservation or the table does not exist").build();
+			var requestedSlot = TimeSlot.parse(reservation.slotTimeStart(), reservation.slotTimeEnd());
+			// The table lookup and the first ledger read do not depend on each other, so they run concurrently
+			var tableIdFuture = findTableId(reservation);
+			var occupancyFuture = occupancyLedger.read(tableDateKey(reservation));
+			var tableId = Futures.await(tableIdFuture);
+			if (tableId == null) {
+				return APIGatewayV2HTTPResponse.builder().withStatusCode(400).withHeaders(buildHeaders()).withBody("ERROR, the table does not exist").build();
+			}
+			var reservationId = UUID.randomUUID().toString();
+			var tableIdReloaded = false;
+			for (int attempt = 1; ; attempt++) {
+				var occupancy = Futures.await(attempt == 1 ? occupancyFuture : occupancyLedger.read(tableDateKey(reservation)));
+				if (occupancy.conflictsWith(requestedSlot)) {
+					return APIGatewayV2HTTPResponse.builder().withStatusCode(400).withHeaders(buildHeaders()).withBody("ERROR, there is already a reservation for this slot").build();
+				}
+				try {
+					// Table check, slot claim and reservation put succeed or fail together
+					Futures.await(dynamoDbClient.transactWriteItems(TransactWriteItemsRequest.builder().transactItems(
+							TransactWriteItem.builder().conditionCheck(tableExistsCheck(tableId, reservation)).build(),
+							TransactWriteItem.builder().update(occupancyLedger.claim(occupancy, requestedSlot)).build(),
+							TransactWriteItem.builder().put(reservationPut(reservationId, reservation)).build()).build()));
+					return APIGatewayV2HTTPResponse.builder().withStatusCode(200).withHeaders(buildHeaders()).withBody(reservationId).build();
+				} catch (TransactionCanceledException e) {
+					var reasons = e.cancellationReasons();
+					if (isConditionFailure(reasons, 0)) {
+						// The cached id may belong to a table that was deleted or replaced: resolve the number once more
+						tableIdByNumberCache.invalidate(String.valueOf(reservation.tableNumber()));
+						var reloadedTableId = tableIdReloaded ? null : Futures.await(findTableId(reservation));
+						if (reloadedTableId == null || reloadedTableId.equals(tableId)) {
+							return APIGatewayV2HTTPResponse.builder().withStatusCode(400).withHeaders(buildHeaders()).withBody("ERROR, the table does not exist").build();
+						}
+						System.out.println("Table " + reservation.tableNumber() + " moved from id " + tableId + " to " + reloadedTableId + ", retrying");
+						tableId = reloadedTableId;
+						tableIdReloaded = true;
+						continue;
+					}
+					// Another booking changed the same day in between: re-read the ledger and check again
+					if (!isConditionFailure(reasons, 1) || attempt >= MAX_BOOKING_ATTEMPTS) {
+						throw e;
+					}
+					System.out.println("Occupancy of " + occupancy.tableDate() + " changed concurrently, retrying");
+				}
 			}
 		} catch(Exception e) {
 			System.err.println("Error while persisting reservation " + e.getMessage());
-			return APIGatewayV2HTTPResponse.builder().withStatusCode(400).withHeaders(buildHeaders()).withBody("ERROR " + e.getMessage()).build();
+			return APIGatewayV2HTTPResponse.builder().withStatusCode(errorStatus(e)).withHeaders(buildHeaders()).withBody("ERROR " + e.getMessage()).build();
 		}
 	}
 
-	private boolean validateTable(Reservation reservation) {
-		var tableList = amazonDynamoDB.scan(new ScanRequest(System.getenv("tables_table")))
-				.getItems().stream().map(this::buildTableResponse).filter(value -> reservation.tableNumber().equals(value.number())).count();
-		System.out.println("Validate table:" + tableList);
-		return tableList == 1;
+	// Invalid input and failed conditions are the caller's fault (400). Throttling and other service or network
+	// failures get a 5xx, so an Idempotency-Key is released and the request can be retried for real.
+	private static int errorStatus(Exception e) {
+		if (e instanceof IllegalArgumentException || e instanceof DateTimeParseException || e instanceof ConditionalCheckFailedException) {
+			return 400;
+		}
+		if (e instanceof TransactionCanceledException canceled && canceled.cancellationReasons().stream()
+				.anyMatch(reason -> "ConditionalCheckFailed".equals(reason.code()))) {
+			return 400;
+		}
+		if (e instanceof AwsServiceException serviceException && serviceException.isThrottlingException()) {
+			return 503;
+		}
+		return 500;
+	}
+
+	private ConditionCheck tableExistsCheck(String tableId, Reservation reservation) {
+		return ConditionCheck.builder()
+				.tableName(environment.apply("tables_table"))
+				.key(Map.of("id", AttributeValue.builder().n(tableId).build()))
+				.conditionExpression("#number = :number")
+				.expressionAttributeNames(Map.of("#number", "number"))
+				.expressionAttributeValues(Map.of(":number", AttributeValue.builder().n(String.valueOf(reservation.tableNumber())).build()))
+				.build();
+	}
+
+	private Put reservationPut(String reservationId, Reservation reservation) {
+		var attributesMap = new HashMap<String, AttributeValue>();
+		attributesMap.put("id", AttributeValue.builder().s(reservationId).build());
+		attributesMap.put("tableNumber", AttributeValue.builder().n(String.valueOf(reservation.tableNumber())).build());
+		attributesMap.put("tableDate", AttributeValue.builder().s(tableDateKey(reservation)).build());
+		attributesMap.put("clientName", AttributeValue.builder().s(String.valueOf(reservation.clientName())).build());
+		attributesMap.put("phoneNumber", AttributeValue.builder().s(String.valueOf(reservation.phoneNumber())).build());
+		attributesMap.put("date", AttributeValue.builder().s(reservation.date()).build());
+		attributesMap.put("slotTimeStart", AttributeValue.builder().s(String.valueOf(reservation.slotTimeStart())).build());
+		attributesMap.put("slotTimeEnd", AttributeValue.builder().s(String.valueOf(reservation.slotTimeEnd())).build());
+		return Put.builder()
+				.tableName(environment.apply("reservations_table"))
+				.item(attributesMap)
+				.conditionExpression("attribute_not_exists(id)")
+				.build();
+	}
+
+	private boolean isConditionFailure(List<CancellationReason> reasons, int index) {
+		return reasons != null && reasons.size() > index && "ConditionalCheckFailed".equals(reasons.get(index).code());
 	}
 
-	private boolean validateReservation(Reservation reservation) {
-		var reservationList = amazonDynamoDB.scan(new ScanRequest(System.getenv("reservations_table")))
-				.getItems().stream().map(this::buildReservationResponse)
-				.filter(value ->
-						value.tableNumber().equals(reservation.tableNumber()) && value.slotTimeStart().equals(reservation.slotTimeStart())
-								&& value.slotTimeEnd().equals(reservation.slotTimeEnd())).count();
-		System.out.println("Validate reservation:" + reservationList);
-		return reservationList == 0;
+	// Returns the id of the single table with the reservation's number, or null if there is none.
+	// Misses are not cached: a table created by another container must become bookable right away.
+	private CompletableFuture<String> findTableId(Reservation reservation) {
+		return tableIdByNumberCache.getAsync(String.valueOf(reservation.tableNumber()), number -> queryTableId(reservation))
+				.thenApply(tableId -> tableId.orElse(null));
 	}
 
+	private CompletableFuture<String> queryTableId(Reservation reservation) {
+		// Limit 2 keeps the "exactly one table with this number" semantics while reading at most two index entries
+		var queryRequest = QueryRequest.builder()
+				.tableName(environment.apply("tables_table"))
+				.indexName(TABLE_NUMBER_INDEX)
+				.keyConditionExpression("#number = :number")
+				.expressionAttributeNames(Map.of("#number", "number"))
+				.expressionAttributeValues(Map.of(":number", AttributeValue.builder().n(String.valueOf(reservation.tableNumber())).build()))
+				.limit(2)
+				.build();
+		return dynamoDbClient.query(queryRequest)
+				.thenApply(result -> {
+					var items = result.items();
+					System.out.println("Validate table:" + items.size());
+					return items.size() == 1 ? items.get(0).get("id").n() : null;
+				})
+				.exceptionallyCompose(e -> {
+					var cause = Futures.unwrap(e);
+					if (!(cause instanceof DynamoDbException dynamoDbException) || !isIndexUnavailable(dynamoDbException)) {
+						return CompletableFuture.failedFuture(cause);
+					}
+					System.err.println("Index " + TABLE_NUMBER_INDEX + " is not available yet, falling back to scan: "
+							+ dynamoDbException.awsErrorDetails().errorMessage());
+					return scanFindTableId(reservation);
+				});
+	}
 
+	// Used only while number-index is missing or still backfilling on an existing deployment (see README)
+	private CompletableFuture<String> scanFindTableId(Reservation reservation) {
+		var tableList = new ArrayList<Table>();
+		return dynamoDbClient.scanPaginator(ScanRequest.builder().tableName(environment.apply("tables_table")).build()).items()
+				.subscribe(item -> {
+					var table = buildTableResponse(item);
+					if (reservation.tableNumber().equals(table.number())) {
+						tableList.add(table);
+					}
+				})
+				.thenApply(done -> {
+					System.out.println("Validate table (scan):" + tableList.size());
+					return tableList.size() == 1 ? String.valueOf(tableList.get(0).id()) : null;
+				});
+	}
 
-	public record APIRequest(String method, String path, String authorization_header, Map<String, String> body_json) {
+	private boolean isIndexUnavailable(DynamoDbException e) {
+		var errorDetails = e.awsErrorDetails();
+		return errorDetails != null && "ValidationException".equals(errorDetails.errorCode())
+				&& errorDetails.errorMessage() != null && errorDetails.errorMessage().contains("index");
+	}
+
+	private String tableDateKey(Reservation reservation) {
+		return reservation.tableNumber() + "#" + reservation.date();
+	}
+
+
+
+	public record APIRequest(String method, String path, String authorization_header, Map<String, String> body_json,
+							 Map<String, String> query_params, List<Map<String, String>> body_items, String table_id,
+							 String idempotency_key) {
 
 	}
 
@@ -469,15 +1147,15 @@ public class ApiHandler implements RequestHandler<ApiHandler.APIRequest, APIGate
 
 	}
 
-	public record Reservation(Number tableNumber, String clientName, String phoneNumber, String date, String slotTimeStart, String slotTimeEnd) {
+	public record ImportResult(String id, String status, String error) {
 
 	}
 
-	public record ReservationResponse(List<Reservation> reservations) {
+	public record TableAvailability(Number number, Number places, Boolean isVip, Number minOrder, boolean free) {
 
 	}
 
-	public record TableResponse(List<Table> tables) {
+	public record Reservation(Number tableNumber, String clientName, String phoneNumber, String date, String slotTimeStart, String slotTimeEnd) {
 
 	}
 
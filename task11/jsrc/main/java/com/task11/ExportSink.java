@@ -0,0 +1,43 @@
+package com.task11;
+
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * Destination of a reservations export. Chunks are complete gzip members, so they can be appended in
+ * any order and the concatenation is still one valid gzip file. Implementations must accept concurrent writes.
+ */
+interface ExportSink extends AutoCloseable {
+
+	Pattern OBJECT_NAME = Pattern.compile("[A-Za-z0-9_.-][A-Za-z0-9_./-]{0,199}");
+
+	void write(byte[] gzipMember) throws IOException;
+
+	/**
+	 * Makes the export visible; nothing written before is guaranteed to be readable until this returns.
+	 */
+	@Override
+	void close() throws IOException;
+
+	/**
+	 * Discards a partially written export.
+	 */
+	void abort();
+
+	/**
+	 * Opens an upload to {@code s3://bucket/prefix + name}. The bucket and prefix come from the deployment, callers
+	 * only choose the object name below the prefix.
+	 */
+	static ExportSink open(S3Client s3Client, String bucket, String prefix, String name) {
+		if (bucket == null || bucket.isBlank()) {
+			throw new IllegalStateException("No export bucket is configured");
+		}
+		if (!OBJECT_NAME.matcher(name).matches() || name.contains("..")) {
+			throw new IllegalArgumentException("name must be 1-200 characters of letters, digits, '.', '_', '-' and '/', e.g. 2024-07-26/reservations.ndjson.gz");
+		}
+		return new S3ExportSink(s3Client, bucket, Objects.requireNonNullElse(prefix, "") + name);
+	}
+}
@@ -0,0 +1,63 @@
+package com.task11;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Glue between the asynchronous SDK clients and the synchronous route methods.
+ */
+final class Futures {
+
+	private Futures() {
+	}
+
+	/**
+	 * Waits for {@code future} and rethrows its failure unwrapped, so callers catch SDK exceptions
+	 * such as {@code ConditionalCheckFailedException} exactly as with a blocking client.
+	 * <p>
+	 * The wait is interruptible: a route abandoned after its timeout is interrupted, cancels the call it is
+	 * waiting for and fails with a {@link CancellationException} instead of starting further calls.
+	 */
+	static <T> T await(CompletableFuture<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new CancellationException("Request abandoned while waiting for a response");
+		} catch (ExecutionException e) {
+			var cause = unwrap(e);
+			if (cause instanceof RuntimeException runtimeException) {
+				throw runtimeException;
+			}
+			if (cause instanceof Error error) {
+				throw error;
+			}
+			throw new CompletionException(cause);
+		}
+	}
+
+	/**
+	 * Waits for all {@code futures} like {@link #await} and returns their results in order. If the wait is
+	 * interrupted, the futures are cancelled as well, so tasks of an abandoned route that have not started yet never run.
+	 */
+	static <T> List<T> awaitAll(List<CompletableFuture<T>> futures) {
+		try {
+			await(CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)));
+		} catch (CancellationException e) {
+			futures.forEach(future -> future.cancel(true));
+			throw e;
+		}
+		return futures.stream().map(CompletableFuture::join).toList();
+	}
+
+	static Throwable unwrap(Throwable throwable) {
+		while ((throwable instanceof CompletionException || throwable instanceof ExecutionException) && throwable.getCause() != null) {
+			throwable = throwable.getCause();
+		}
+		return throwable;
+	}
+}
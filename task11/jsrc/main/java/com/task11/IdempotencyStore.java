@@ -0,0 +1,179 @@
+package com.task11;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the response of a write request under its caller and Idempotency-Key so that client and API Gateway retries
+ * return the stored response instead of running validation and writes again.
+ * <p>
+ * A key is first claimed with a conditional IN_PROGRESS put (a lock that expires after {@link #LOCK_TTL}),
+ * then replaced by the COMPLETED response, kept for {@link #RESPONSE_TTL}. Duplicates arriving at the same
+ * container while the first request runs share its result; duplicates on other containers get a 409.
+ * Responses with a 5xx status are not stored, so such requests can be retried for real.
+ */
+final class IdempotencyStore {
+
+	private static final Duration LOCK_TTL = Duration.ofMinutes(1);
+
+	private static final Duration RESPONSE_TTL = Duration.ofHours(24);
+
+	private final DynamoDbAsyncClient dynamoDbClient;
+
+	private final String tableName;
+
+	private final Map<String, CompletableFuture<StoredResponse>> inFlight = new ConcurrentHashMap<>();
+
+	IdempotencyStore(DynamoDbAsyncClient dynamoDbClient, String tableName) {
+		this.dynamoDbClient = dynamoDbClient;
+		this.tableName = tableName;
+	}
+
+	static String requestHash(Map<String, String> body) {
+		try {
+			var digest = MessageDigest.getInstance("SHA-256")
+					.digest(String.valueOf(body == null ? Map.of() : new TreeMap<>(body)).getBytes(StandardCharsets.UTF_8));
+			return HexFormat.of().formatHex(digest);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @param subject the verified caller; keys of different users never collide, nor can one replay another's response
+	 * @param scope   identifies the route, the same key may be used on different routes
+	 */
+	StoredResponse execute(String subject, String scope, String idempotencyKey, String requestHash, Supplier<StoredResponse> action) {
+		if (subject == null || subject.isBlank()) {
+			throw new IllegalArgumentException("Idempotency keys require an authenticated caller");
+		}
+		var storageKey = subject + "#" + scope + "#" + idempotencyKey;
+		var ownFuture = new CompletableFuture<StoredResponse>();
+		var runningFuture = inFlight.putIfAbsent(storageKey, ownFuture);
+		if (runningFuture != null) {
+			System.out.println("Joining in-flight request " + storageKey);
+			return runningFuture.join();
+		}
+		try {
+			var response = executeOnce(storageKey, requestHash, action);
+			ownFuture.complete(response);
+			return response;
+		} catch (RuntimeException e) {
+			ownFuture.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlight.remove(storageKey, ownFuture);
+		}
+	}
+
+	private StoredResponse executeOnce(String storageKey, String requestHash, Supplier<StoredResponse> action) {
+		var stored = Futures.await(dynamoDbClient.getItem(GetItemRequest.builder()
+				.tableName(tableName)
+				.key(storageKeyOf(storageKey))
+				.consistentRead(true)
+				.build()));
+		long now = Instant.now().getEpochSecond();
+		if (stored.hasItem() && Long.parseLong(stored.item().get("expiresAt").n()) >= now) {
+			return replay(stored.item(), requestHash);
+		}
+
+		try {
+			var lock = new HashMap<String, AttributeValue>();
+			lock.putAll(storageKeyOf(storageKey));
+			lock.put("status", AttributeValue.builder().s("IN_PROGRESS").build());
+			lock.put("requestHash", AttributeValue.builder().s(requestHash).build());
+			lock.put("expiresAt", AttributeValue.builder().n(String.valueOf(now + LOCK_TTL.toSeconds())).build());
+			Futures.await(dynamoDbClient.putItem(PutItemRequest.builder()
+					.tableName(tableName)
+					.item(lock)
+					.conditionExpression("attribute_not_exists(idempotencyKey) OR expiresAt < :now")
+					.expressionAttributeValues(Map.of(":now", AttributeValue.builder().n(String.valueOf(now)).build()))
+					.build()));
+		} catch (ConditionalCheckFailedException e) {
+			// Another container claimed the key between our read and write
+			return StoredResponse.inProgress();
+		}
+
+		StoredResponse response;
+		try {
+			response = action.get();
+		} catch (RuntimeException e) {
+			release(storageKey);
+			throw e;
+		}
+		if (response.statusCode() >= 500) {
+			release(storageKey);
+			return response;
+		}
+		var completed = new HashMap<String, AttributeValue>();
+		completed.putAll(storageKeyOf(storageKey));
+		completed.put("status", AttributeValue.builder().s("COMPLETED").build());
+		completed.put("requestHash", AttributeValue.builder().s(requestHash).build());
+		completed.put("statusCode", AttributeValue.builder().n(String.valueOf(response.statusCode())).build());
+		if (response.body() != null) {
+			completed.put("body", AttributeValue.builder().s(response.body()).build());
+		}
+		completed.put("expiresAt", AttributeValue.builder()
+				.n(String.valueOf(Instant.now().getEpochSecond() + RESPONSE_TTL.toSeconds())).build());
+		Futures.await(dynamoDbClient.putItem(PutItemRequest.builder().tableName(tableName).item(completed).build()));
+		return response;
+	}
+
+	// Response for a duplicate of an unexpired record; expired records (abandoned locks) are taken over instead
+	private StoredResponse replay(Map<String, AttributeValue> stored, String requestHash) {
+		if (!requestHash.equals(stored.get("requestHash").s())) {
+			return new StoredResponse(422, "ERROR Idempotency-Key was already used for a different request", false);
+		}
+		if ("IN_PROGRESS".equals(stored.get("status").s())) {
+			return StoredResponse.inProgress();
+		}
+		System.out.println("Replaying stored response for " + stored.get("idempotencyKey").s());
+		var body = stored.get("body");
+		return new StoredResponse(Integer.parseInt(stored.get("statusCode").n()), body == null ? null : body.s(), true);
+	}
+
+	private void release(String storageKey) {
+		// An abandoned request still releases its key, so a retry does not wait for the lock to expire
+		boolean interrupted = Thread.interrupted();
+		try {
+			Futures.await(dynamoDbClient.deleteItem(DeleteItemRequest.builder()
+					.tableName(tableName)
+					.key(storageKeyOf(storageKey))
+					.build()));
+		} catch (Exception e) {
+			System.err.println("Error while releasing idempotency key " + storageKey + ": " + e.getMessage());
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private Map<String, AttributeValue> storageKeyOf(String storageKey) {
+		return Map.of("idempotencyKey", AttributeValue.builder().s(storageKey).build());
+	}
+
+	record StoredResponse(int statusCode, String body, boolean replayed) {
+
+		static StoredResponse inProgress() {
+			return new StoredResponse(409, "ERROR a request with this Idempotency-Key is still in progress", false);
+		}
+	}
+}
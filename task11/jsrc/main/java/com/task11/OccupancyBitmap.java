@@ -0,0 +1,70 @@
+package com.task11;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+
+/**
+ * Occupancy of one table and day as 96 quarter-hour bits: bit {@code i} is set when some reservation
+ * overlaps minutes [15 * i, 15 * i + 15). Quarters 0-63 live in {@code low}, 64-95 in {@code high}.
+ * A slot marks every quarter it touches, so checking a slot against the bitmap is exact for quarter-aligned
+ * times and errs on the busy side otherwise.
+ */
+public record OccupancyBitmap(long low, long high) {
+
+	static final OccupancyBitmap EMPTY = new OccupancyBitmap(0, 0);
+
+	static final int MINUTES_PER_QUARTER = 15;
+
+	static final int QUARTERS_PER_DAY = TimeSlot.MINUTES_PER_DAY / MINUTES_PER_QUARTER;
+
+	// Stored as a 12 byte Binary attribute, quarter 0 is the highest bit of the first byte
+	private static final int ENCODED_SIZE = QUARTERS_PER_DAY / Byte.SIZE;
+
+	static OccupancyBitmap of(TimeSlot slot) {
+		int first = slot.startMinute() / MINUTES_PER_QUARTER;
+		int end = (slot.endMinute() + MINUTES_PER_QUARTER - 1) / MINUTES_PER_QUARTER;
+		return new OccupancyBitmap(range(first, Math.min(end, Long.SIZE)), range(Math.max(first, Long.SIZE) - Long.SIZE, end - Long.SIZE));
+	}
+
+	static OccupancyBitmap of(Collection<TimeSlot> slots) {
+		var bitmap = EMPTY;
+		for (var slot : slots) {
+			bitmap = bitmap.or(of(slot));
+		}
+		return bitmap;
+	}
+
+	static OccupancyBitmap decode(byte[] encoded) {
+		if (encoded.length != ENCODED_SIZE) {
+			throw new IllegalArgumentException("Occupancy bitmap must be " + ENCODED_SIZE + " bytes, got " + encoded.length);
+		}
+		var buffer = ByteBuffer.wrap(encoded);
+		long low = Long.reverse(buffer.getLong());
+		long high = Long.reverse((long) buffer.getInt()) >>> Integer.SIZE;
+		return new OccupancyBitmap(low, high);
+	}
+
+	byte[] encode() {
+		return ByteBuffer.allocate(ENCODED_SIZE)
+				.putLong(Long.reverse(low))
+				.putInt((int) (Long.reverse(high) >>> Integer.SIZE))
+				.array();
+	}
+
+	OccupancyBitmap or(OccupancyBitmap other) {
+		return new OccupancyBitmap(low | other.low, high | other.high);
+	}
+
+	boolean intersects(OccupancyBitmap other) {
+		return (low & other.low) != 0 || (high & other.high) != 0;
+	}
+
+	// Bits [from, to) of one long; empty when the range does not reach into it
+	private static long range(int from, int to) {
+		if (to <= 0 || from >= to) {
+			return 0;
+		}
+		long upTo = to >= Long.SIZE ? -1L : (1L << to) - 1;
+		return upTo & (-1L << from);
+	}
+}
@@ -0,0 +1,232 @@
+package com.task11;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.Update;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * One item per {@code tableNumber#date} in the occupancy table holding the booked slots of that day,
+ * the same slots as an {@link OccupancyBitmap} and a version number. Reservations are written in a transaction
+ * together with a version-conditioned update of this item, so two concurrent bookings of the same table and day
+ * cannot both succeed, and the bitmap written with them is always the union of the slots.
+ */
+final class OccupancyLedger {
+
+	private static final int BATCH_GET_SIZE = 100;
+
+	private static final int MAX_MERGE_ATTEMPTS = 5;
+
+	private static final Map<String, String> ATTRIBUTE_NAMES = Map.of("#version", "version", "#slots", "slots", "#bitmap", "bitmap");
+
+	private final DynamoDbAsyncClient dynamoDbClient;
+
+	private final String occupancyTable;
+
+	private final String reservationsTable;
+
+	private final String tableDateIndex;
+
+	OccupancyLedger(DynamoDbAsyncClient dynamoDbClient, String occupancyTable, String reservationsTable, String tableDateIndex) {
+		this.dynamoDbClient = dynamoDbClient;
+		this.occupancyTable = occupancyTable;
+		this.reservationsTable = reservationsTable;
+		this.tableDateIndex = tableDateIndex;
+	}
+
+	/**
+	 * Strongly consistent read of the day ledger. Days booked before the ledger existed have no item yet;
+	 * their slots are rebuilt from the reservations tableDate index and written with the first claim.
+	 */
+	CompletableFuture<Snapshot> read(String tableDate) {
+		return readStored(tableDate).thenCompose(snapshot -> snapshot.exists()
+				? CompletableFuture.completedFuture(snapshot)
+				: rebuildSlots(tableDate).thenApply(slots -> new Snapshot(tableDate, 0, false, slots)));
+	}
+
+	private CompletableFuture<Snapshot> readStored(String tableDate) {
+		return dynamoDbClient.getItem(GetItemRequest.builder()
+						.tableName(occupancyTable)
+						.key(Map.of("tableDate", AttributeValue.builder().s(tableDate).build()))
+						.consistentRead(true)
+						.build())
+				.thenApply(response -> response.hasItem()
+						? new Snapshot(tableDate, Long.parseLong(response.item().get("version").n()), true, decodeSlots(response.item()))
+						: new Snapshot(tableDate, 0, false, List.of()));
+	}
+
+	/**
+	 * Update that records {@code slot} in the ledger; it only applies if nobody changed the ledger since
+	 * {@code snapshot} was read, which is what makes the surrounding transaction race free.
+	 */
+	Update claim(Snapshot snapshot, TimeSlot slot) {
+		var newSlots = new ArrayList<String>();
+		newSlots.add(slot.encode());
+		if (!snapshot.exists()) {
+			snapshot.slots().forEach(bookedSlot -> newSlots.add(bookedSlot.encode()));
+		}
+
+		var values = new HashMap<String, AttributeValue>();
+		values.put(":slots", AttributeValue.builder().ss(newSlots).build());
+		values.put(":bitmap", encodeBitmap(snapshot.bitmap().or(OccupancyBitmap.of(slot))));
+		return Update.builder()
+				.tableName(occupancyTable)
+				.key(Map.of("tableDate", AttributeValue.builder().s(snapshot.tableDate()).build()))
+				.updateExpression("SET #version = :next, #bitmap = :bitmap ADD #slots :slots")
+				.conditionExpression(versionCondition(snapshot, values))
+				.expressionAttributeNames(ATTRIBUTE_NAMES)
+				.expressionAttributeValues(values)
+				.build();
+	}
+
+	/**
+	 * Adds {@code slots} to the stored ledger of the day, creating it if needed, and rewrites the bitmap.
+	 * Used to backfill the ledger from the reservations table; retried when a booking changes the day meanwhile.
+	 */
+	CompletableFuture<Void> merge(String tableDate, Collection<TimeSlot> slots) {
+		return merge(tableDate, slots, 1);
+	}
+
+	private CompletableFuture<Void> merge(String tableDate, Collection<TimeSlot> slots, int attempt) {
+		return readStored(tableDate).thenCompose(snapshot -> {
+			var merged = new LinkedHashSet<>(snapshot.slots());
+			merged.addAll(slots);
+			var values = new HashMap<String, AttributeValue>();
+			values.put(":slots", AttributeValue.builder().ss(merged.stream().map(TimeSlot::encode).toList()).build());
+			values.put(":bitmap", encodeBitmap(OccupancyBitmap.of(merged)));
+			return dynamoDbClient.updateItem(UpdateItemRequest.builder()
+					.tableName(occupancyTable)
+					.key(Map.of("tableDate", AttributeValue.builder().s(tableDate).build()))
+					.updateExpression("SET #version = :next, #bitmap = :bitmap, #slots = :slots")
+					.conditionExpression(versionCondition(snapshot, values))
+					.expressionAttributeNames(ATTRIBUTE_NAMES)
+					.expressionAttributeValues(values)
+					.build());
+		}).<Void>thenApply(response -> null).exceptionallyCompose(e -> {
+			if (Futures.unwrap(e) instanceof ConditionalCheckFailedException && attempt < MAX_MERGE_ATTEMPTS) {
+				return merge(tableDate, slots, attempt + 1);
+			}
+			return CompletableFuture.failedFuture(Futures.unwrap(e));
+		});
+	}
+
+	// Adds :next and, for an existing item, :expected to values
+	private String versionCondition(Snapshot snapshot, Map<String, AttributeValue> values) {
+		values.put(":next", AttributeValue.builder().n(String.valueOf(snapshot.version() + 1)).build());
+		if (!snapshot.exists()) {
+			return "attribute_not_exists(tableDate)";
+		}
+		values.put(":expected", AttributeValue.builder().n(String.valueOf(snapshot.version())).build());
+		return "#version = :expected";
+	}
+
+	/**
+	 * Booked slots of several days in concurrent BatchGetItem calls of up to {@link #BATCH_GET_SIZE} keys.
+	 * Eventually consistent: good enough for search, bookings still go through {@link #read(String)} and {@link #claim}.
+	 * Days without a ledger item are absent from the result.
+	 */
+	CompletableFuture<Map<String, List<TimeSlot>>> readDays(List<String> tableDates) {
+		return readAll(tableDates, "tableDate, #slots", Map.of("#slots", "slots"), this::decodeSlots);
+	}
+
+	/**
+	 * Occupancy bitmaps of several days, with the same batching and consistency as {@link #readDays(List)}.
+	 * Items written before the bitmap was introduced get it computed from their slots.
+	 */
+	CompletableFuture<Map<String, OccupancyBitmap>> readBitmaps(List<String> tableDates) {
+		return readAll(tableDates, "tableDate, #slots, #bitmap", Map.of("#slots", "slots", "#bitmap", "bitmap"), item -> item.containsKey("bitmap")
+				? OccupancyBitmap.decode(item.get("bitmap").b().asByteArrayUnsafe())
+				: OccupancyBitmap.of(decodeSlots(item)));
+	}
+
+	private <T> CompletableFuture<Map<String, T>> readAll(List<String> tableDates, String projection, Map<String, String> names,
+														   Function<Map<String, AttributeValue>, T> decoder) {
+		var days = new ConcurrentHashMap<String, T>();
+		var batches = new ArrayList<CompletableFuture<Void>>();
+		for (int from = 0; from < tableDates.size(); from += BATCH_GET_SIZE) {
+			var keys = new ArrayList<Map<String, AttributeValue>>();
+			for (var tableDate : tableDates.subList(from, Math.min(from + BATCH_GET_SIZE, tableDates.size()))) {
+				keys.add(Map.of("tableDate", AttributeValue.builder().s(tableDate).build()));
+			}
+			batches.add(batchGet(Map.of(occupancyTable, KeysAndAttributes.builder()
+					.keys(keys)
+					.projectionExpression(projection)
+					.expressionAttributeNames(names)
+					.build()), days, decoder));
+		}
+		return CompletableFuture.allOf(batches.toArray(CompletableFuture[]::new)).thenApply(done -> days);
+	}
+
+	// Repeats the call with the unprocessed keys until DynamoDB has returned every item
+	private <T> CompletableFuture<Void> batchGet(Map<String, KeysAndAttributes> pending, Map<String, T> days,
+												 Function<Map<String, AttributeValue>, T> decoder) {
+		return dynamoDbClient.batchGetItem(BatchGetItemRequest.builder().requestItems(pending).build())
+				.thenCompose(result -> {
+					for (var item : result.responses().getOrDefault(occupancyTable, List.of())) {
+						days.put(item.get("tableDate").s(), decoder.apply(item));
+					}
+					return result.unprocessedKeys().isEmpty()
+							? CompletableFuture.completedFuture(null)
+							: batchGet(result.unprocessedKeys(), days, decoder);
+				});
+	}
+
+	private AttributeValue encodeBitmap(OccupancyBitmap bitmap) {
+		return AttributeValue.builder().b(SdkBytes.fromByteArray(bitmap.encode())).build();
+	}
+
+	private List<TimeSlot> decodeSlots(Map<String, AttributeValue> item) {
+		var slots = new ArrayList<TimeSlot>();
+		if (item.containsKey("slots")) {
+			for (var encoded : item.get("slots").ss()) {
+				slots.add(TimeSlot.decode(encoded));
+			}
+		}
+		return slots;
+	}
+
+	private CompletableFuture<List<TimeSlot>> rebuildSlots(String tableDate) {
+		var slots = new ArrayList<TimeSlot>();
+		var queryRequest = QueryRequest.builder()
+				.tableName(reservationsTable)
+				.indexName(tableDateIndex)
+				.keyConditionExpression("tableDate = :tableDate")
+				.expressionAttributeValues(Map.of(":tableDate", AttributeValue.builder().s(tableDate).build()))
+				.projectionExpression("slotTimeStart, slotTimeEnd")
+				.build();
+		return dynamoDbClient.queryPaginator(queryRequest).items()
+				.subscribe(item -> slots.add(TimeSlot.parse(item.get("slotTimeStart").s(), item.get("slotTimeEnd").s())))
+				.thenApply(done -> {
+					System.out.println("Rebuilt occupancy of " + tableDate + ": " + slots.size() + " slots");
+					return slots;
+				});
+	}
+
+	record Snapshot(String tableDate, long version, boolean exists, List<TimeSlot> slots) {
+
+		boolean conflictsWith(TimeSlot slot) {
+			return slots.stream().anyMatch(slot::overlaps);
+		}
+
+		// Computed from the slots rather than read, so items that predate the bitmap get a correct one on their next claim
+		OccupancyBitmap bitmap() {
+			return OccupancyBitmap.of(slots);
+		}
+	}
+}
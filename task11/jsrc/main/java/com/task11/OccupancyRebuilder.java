@@ -0,0 +1,77 @@
+package com.task11;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Backfills the occupancy ledger, bitmaps included, from the reservations table: a parallel scan groups the
+ * slots of every reservation by table and day, then each day is merged into its ledger item. Merging is
+ * idempotent and safe next to live bookings, so the rebuild can be repeated at any time.
+ */
+final class OccupancyRebuilder {
+
+	static final int MAX_SEGMENTS = 32;
+
+	// Concurrent ledger merges, each one is a read and a conditional update
+	private static final int MERGE_PARALLELISM = 16;
+
+	private final DynamoDbAsyncClient dynamoDbClient;
+
+	private final String reservationsTable;
+
+	private final OccupancyLedger occupancyLedger;
+
+	OccupancyRebuilder(DynamoDbAsyncClient dynamoDbClient, String reservationsTable, OccupancyLedger occupancyLedger) {
+		this.dynamoDbClient = dynamoDbClient;
+		this.reservationsTable = reservationsTable;
+		this.occupancyLedger = occupancyLedger;
+	}
+
+	RebuildResult rebuild(int totalSegments) {
+		if (totalSegments < 1 || totalSegments > MAX_SEGMENTS) {
+			throw new IllegalArgumentException("segments must be between 1 and " + MAX_SEGMENTS);
+		}
+		var days = new ConcurrentHashMap<String, Set<TimeSlot>>();
+		var segments = new ArrayList<CompletableFuture<Void>>();
+		for (int segment = 0; segment < totalSegments; segment++) {
+			var scanRequest = ScanRequest.builder()
+					.tableName(reservationsTable)
+					.segment(segment)
+					.totalSegments(totalSegments)
+					.projectionExpression("tableNumber, #date, slotTimeStart, slotTimeEnd")
+					.expressionAttributeNames(Map.of("#date", "date"))
+					.build();
+			segments.add(dynamoDbClient.scanPaginator(scanRequest).items().subscribe(item -> days
+					.computeIfAbsent(tableDateOf(item), tableDate -> ConcurrentHashMap.newKeySet())
+					.add(TimeSlot.parse(item.get("slotTimeStart").s(), item.get("slotTimeEnd").s()))));
+		}
+		Futures.await(CompletableFuture.allOf(segments.toArray(CompletableFuture[]::new)));
+		long reservations = days.values().stream().mapToLong(Set::size).sum();
+		System.out.println("Scanned " + reservations + " reservation slots on " + days.size() + " table days");
+
+		var pending = new ArrayList<>(days.entrySet());
+		for (int from = 0; from < pending.size(); from += MERGE_PARALLELISM) {
+			List<CompletableFuture<Void>> merges = pending.subList(from, Math.min(from + MERGE_PARALLELISM, pending.size())).stream()
+					.map(day -> occupancyLedger.merge(day.getKey(), day.getValue()))
+					.toList();
+			Futures.await(CompletableFuture.allOf(merges.toArray(CompletableFuture[]::new)));
+		}
+		return new RebuildResult(days.size(), reservations, totalSegments);
+	}
+
+	// Reservations made before the tableDate attribute existed only have tableNumber and date
+	private String tableDateOf(Map<String, AttributeValue> item) {
+		return item.get("tableNumber").n() + "#" + item.get("date").s();
+	}
+
+	record RebuildResult(int days, long slots, int segments) {
+	}
+}
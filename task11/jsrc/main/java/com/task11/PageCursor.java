@@ -0,0 +1,73 @@
+package com.task11;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Opaque pagination cursor: the DynamoDB LastEvaluatedKey serialized as URL safe base64 JSON.
+ * Only S and N key attributes are supported, which covers the key schemas of Tables and Reservations.
+ */
+final class PageCursor {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private PageCursor() {
+	}
+
+	static String encode(Map<String, AttributeValue> lastEvaluatedKey) {
+		if (lastEvaluatedKey == null || lastEvaluatedKey.isEmpty()) {
+			return null;
+		}
+		var node = MAPPER.createObjectNode();
+		lastEvaluatedKey.forEach((name, value) -> {
+			if (value.s() != null) {
+				node.putObject(name).put("S", value.s());
+			} else if (value.n() != null) {
+				node.putObject(name).put("N", value.n());
+			} else {
+				throw new IllegalArgumentException("Unsupported key attribute type for " + name);
+			}
+		});
+		try {
+			return Base64.getUrlEncoder().withoutPadding().encodeToString(MAPPER.writeValueAsBytes(node));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	static Map<String, AttributeValue> decode(String cursor) {
+		if (cursor == null || cursor.isBlank()) {
+			return null;
+		}
+		JsonNode node;
+		try {
+			node = MAPPER.readTree(Base64.getUrlDecoder().decode(cursor));
+		} catch (IOException | IllegalArgumentException e) {
+			throw new IllegalArgumentException("Invalid cursor");
+		}
+		if (node == null || !node.isObject()) {
+			throw new IllegalArgumentException("Invalid cursor");
+		}
+		var key = new HashMap<String, AttributeValue>();
+		var fields = node.fields();
+		while (fields.hasNext()) {
+			var field = fields.next();
+			var value = field.getValue();
+			if (value.hasNonNull("S")) {
+				key.put(field.getKey(), AttributeValue.builder().s(value.get("S").asText()).build());
+			} else if (value.hasNonNull("N")) {
+				key.put(field.getKey(), AttributeValue.builder().n(value.get("N").asText()).build());
+			} else {
+				throw new IllegalArgumentException("Invalid cursor");
+			}
+		}
+		return key;
+	}
+}
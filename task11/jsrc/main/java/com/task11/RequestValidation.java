@@ -0,0 +1,98 @@
+package com.task11;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Checks used by the generated {@code RequestValidators} (see jsrc/build/OasValidatorGenerator.java).
+ * Values arrive as strings from the request templates; they are checked without parsing exceptions, so a
+ * rejected request costs a few string scans.
+ */
+final class RequestValidation {
+
+	private RequestValidation() {
+	}
+
+	static Map<String, String> orEmpty(Map<String, String> values) {
+		return values == null ? Map.of() : values;
+	}
+
+	// Request templates pass absent query and path parameters as empty strings
+	static String param(String value) {
+		return value == null || value.isBlank() ? null : value;
+	}
+
+	static void integer(List<Violation> violations, String field, String value, boolean required, Long minimum, Long maximum) {
+		if (value == null) {
+			missing(violations, field, required);
+			return;
+		}
+		var parsed = parseLong(value.trim());
+		if (parsed == null) {
+			violations.add(new Violation(field, "must be an integer"));
+		} else if (minimum != null && parsed < minimum) {
+			violations.add(new Violation(field, "must be at least " + minimum));
+		} else if (maximum != null && parsed > maximum) {
+			violations.add(new Violation(field, "must be at most " + maximum));
+		}
+	}
+
+	static void bool(List<Violation> violations, String field, String value, boolean required) {
+		if (value == null) {
+			missing(violations, field, required);
+		} else if (!"true".equalsIgnoreCase(value.trim()) && !"false".equalsIgnoreCase(value.trim())) {
+			violations.add(new Violation(field, "must be true or false"));
+		}
+	}
+
+	static void string(List<Violation> violations, String field, String value, boolean required,
+					   Pattern pattern, Integer maxLength, Set<String> allowed) {
+		if (value == null || (required && value.isBlank())) {
+			missing(violations, field, required);
+		} else if (maxLength != null && value.length() > maxLength) {
+			violations.add(new Violation(field, "must not be longer than " + maxLength + " characters"));
+		} else if (pattern != null && !pattern.matcher(value).matches()) {
+			violations.add(new Violation(field, "must match " + pattern.pattern()));
+		} else if (allowed != null && !allowed.contains(value)) {
+			violations.add(new Violation(field, "must be one of " + allowed));
+		}
+	}
+
+	static void items(List<Violation> violations, String field, List<?> items, boolean required, Integer minItems, Integer maxItems) {
+		if (items == null) {
+			missing(violations, field, required);
+		} else if (minItems != null && items.size() < minItems) {
+			violations.add(new Violation(field, "must contain at least " + minItems + " items"));
+		} else if (maxItems != null && items.size() > maxItems) {
+			violations.add(new Violation(field, "must contain at most " + maxItems + " items"));
+		}
+	}
+
+	private static void missing(List<Violation> violations, String field, boolean required) {
+		if (required) {
+			violations.add(new Violation(field, "is required"));
+		}
+	}
+
+	// Long.parseLong without the exception for invalid input
+	private static Long parseLong(String value) {
+		int start = value.startsWith("-") || value.startsWith("+") ? 1 : 0;
+		if (value.length() == start) {
+			return null;
+		}
+		long result = 0;
+		for (int i = start; i < value.length(); i++) {
+			int digit = value.charAt(i) - '0';
+			if (digit < 0 || digit > 9 || result > (Long.MAX_VALUE - digit) / 10) {
+				return null;
+			}
+			result = result * 10 + digit;
+		}
+		return value.charAt(0) == '-' ? -result : result;
+	}
+
+	record Violation(String field, String message) {
+	}
+}
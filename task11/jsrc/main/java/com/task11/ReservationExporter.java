@@ -0,0 +1,143 @@
+package com.task11;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports the reservations table as gzip compressed NDJSON with a parallel scan: every segment is scanned
+ * by its own worker, which compresses its records in blocks of about {@link #BLOCK_SIZE} bytes and hands
+ * each finished gzip member to the sink. Export time scales with the number of segments, memory with the
+ * number of workers times the block size.
+ */
+final class ReservationExporter {
+
+	static final int MAX_SEGMENTS = 32;
+
+	private static final int BLOCK_SIZE = 1024 * 1024;
+
+	private final DynamoDbAsyncClient dynamoDbClient;
+
+	private final String reservationsTable;
+
+	private final ObjectMapper objectMapper;
+
+	private final Function<Map<String, AttributeValue>, ApiHandler.Reservation> itemMapper;
+
+	ReservationExporter(DynamoDbAsyncClient dynamoDbClient, String reservationsTable, ObjectMapper objectMapper,
+						Function<Map<String, AttributeValue>, ApiHandler.Reservation> itemMapper) {
+		this.dynamoDbClient = dynamoDbClient;
+		this.reservationsTable = reservationsTable;
+		this.objectMapper = objectMapper;
+		this.itemMapper = itemMapper;
+	}
+
+	/**
+	 * Writes every reservation to {@code sink} and closes it; the sink is aborted if any segment fails.
+	 */
+	ExportResult export(ExportSink sink, int totalSegments) throws IOException {
+		if (totalSegments < 1 || totalSegments > MAX_SEGMENTS) {
+			throw new IllegalArgumentException("segments must be between 1 and " + MAX_SEGMENTS);
+		}
+		var records = new AtomicLong();
+		var compressedBytes = new AtomicLong();
+		var executor = Executors.newFixedThreadPool(totalSegments);
+		try {
+			var segments = new ArrayList<CompletableFuture<Void>>();
+			for (int segment = 0; segment < totalSegments; segment++) {
+				int currentSegment = segment;
+				segments.add(CompletableFuture.runAsync(
+						() -> exportSegment(sink, currentSegment, totalSegments, records, compressedBytes), executor));
+			}
+			CompletableFuture.allOf(segments.toArray(CompletableFuture[]::new)).join();
+			sink.close();
+		} catch (IOException | RuntimeException e) {
+			sink.abort();
+			var cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+			if (cause instanceof UncheckedIOException uncheckedIOException) {
+				throw uncheckedIOException.getCause();
+			}
+			if (cause instanceof IOException ioException) {
+				throw ioException;
+			}
+			throw cause instanceof RuntimeException runtimeException ? runtimeException : new IllegalStateException(cause);
+		} finally {
+			executor.shutdownNow();
+		}
+		return new ExportResult(records.get(), compressedBytes.get(), totalSegments);
+	}
+
+	private void exportSegment(ExportSink sink, int segment, int totalSegments, AtomicLong records, AtomicLong compressedBytes) {
+		var scanRequest = ScanRequest.builder().tableName(reservationsTable).segment(segment).totalSegments(totalSegments);
+		var block = new GzipBlock();
+		Map<String, AttributeValue> lastEvaluatedKey = null;
+		try {
+			do {
+				var result = Futures.await(dynamoDbClient.scan(scanRequest.exclusiveStartKey(lastEvaluatedKey).build()));
+				for (var item : result.items()) {
+					block.append(objectMapper.writeValueAsBytes(itemMapper.apply(item)));
+					if (block.uncompressedSize() >= BLOCK_SIZE) {
+						compressedBytes.addAndGet(block.flushTo(sink));
+					}
+				}
+				records.addAndGet(result.count());
+				lastEvaluatedKey = result.lastEvaluatedKey();
+			} while (lastEvaluatedKey != null && !lastEvaluatedKey.isEmpty());
+			if (block.uncompressedSize() > 0) {
+				compressedBytes.addAndGet(block.flushTo(sink));
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	record ExportResult(long records, long compressedBytes, int segments) {
+	}
+
+	// NDJSON lines compressed into one gzip member at a time
+	private static final class GzipBlock {
+
+		private final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+
+		private GZIPOutputStream gzip;
+
+		private long uncompressedSize;
+
+		void append(byte[] json) throws IOException {
+			if (gzip == null) {
+				gzip = new GZIPOutputStream(compressed, 64 * 1024);
+			}
+			gzip.write(json);
+			gzip.write('\n');
+			uncompressedSize += json.length + 1;
+		}
+
+		long uncompressedSize() {
+			return uncompressedSize;
+		}
+
+		long flushTo(ExportSink sink) throws IOException {
+			// close() finishes the member and releases the native deflater; closing a ByteArrayOutputStream is a no-op
+			gzip.close();
+			var member = compressed.toByteArray();
+			sink.write(member);
+			compressed.reset();
+			gzip = null;
+			uncompressedSize = 0;
+			return member.length;
+		}
+	}
+}
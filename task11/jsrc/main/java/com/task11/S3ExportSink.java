@@ -0,0 +1,111 @@
+package com.task11;
+
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Streams the export into an S3 multipart upload. Gzip members are buffered until the buffer reaches
+ * the S3 minimum part size. A full buffer is swapped out under the lock and uploaded by the thread that filled
+ * it, so the other segments keep writing meanwhile. Memory stays around {@link #PART_SIZE} per segment
+ * regardless of the export size.
+ */
+final class S3ExportSink implements ExportSink {
+
+	private static final int PART_SIZE = 8 * 1024 * 1024;
+
+	private final S3Client s3Client;
+
+	private final String bucket;
+
+	private final String key;
+
+	private final String uploadId;
+
+	private final List<CompletedPart> parts = new ArrayList<>();
+
+	private ByteArrayOutputStream buffer = new ByteArrayOutputStream(PART_SIZE);
+
+	private int partCount;
+
+	S3ExportSink(S3Client s3Client, String bucket, String key) {
+		this.s3Client = s3Client;
+		this.bucket = bucket;
+		this.key = key;
+		this.uploadId = s3Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+				.bucket(bucket)
+				.key(key)
+				.contentType("application/x-ndjson")
+				.contentEncoding("gzip")
+				.build()).uploadId();
+	}
+
+	@Override
+	public void write(byte[] gzipMember) {
+		ByteArrayOutputStream full;
+		int partNumber;
+		synchronized (this) {
+			buffer.write(gzipMember, 0, gzipMember.length);
+			if (buffer.size() < PART_SIZE) {
+				return;
+			}
+			// Part numbers are taken in buffer order, so the parts concatenate in the order they were filled
+			full = buffer;
+			partNumber = ++partCount;
+			buffer = new ByteArrayOutputStream(PART_SIZE);
+		}
+		uploadPart(partNumber, full.toByteArray());
+	}
+
+	/**
+	 * Must only be called once all writes have returned, so no part upload is still running.
+	 */
+	@Override
+	public synchronized void close() {
+		// The last part may be smaller than 5 MB, and an empty export still needs one (empty) part
+		if (buffer.size() > 0 || partCount == 0) {
+			uploadPart(++partCount, buffer.toByteArray());
+			buffer.reset();
+		}
+		parts.sort(Comparator.comparing(CompletedPart::partNumber));
+		s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+				.bucket(bucket)
+				.key(key)
+				.uploadId(uploadId)
+				.multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+				.build());
+		System.out.println("Completed export to s3://" + bucket + "/" + key + " in " + parts.size() + " parts");
+	}
+
+	@Override
+	public synchronized void abort() {
+		try {
+			s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder().bucket(bucket).key(key).uploadId(uploadId).build());
+		} catch (Exception e) {
+			System.err.println("Error while aborting export upload " + uploadId + ": " + e.getMessage());
+		}
+	}
+
+	private void uploadPart(int partNumber, byte[] bytes) {
+		var response = s3Client.uploadPart(UploadPartRequest.builder()
+						.bucket(bucket)
+						.key(key)
+						.uploadId(uploadId)
+						.partNumber(partNumber)
+						.build(),
+				RequestBody.fromBytes(bytes));
+		synchronized (this) {
+			parts.add(CompletedPart.builder().partNumber(partNumber).eTag(response.eTag()).build());
+		}
+	}
+}
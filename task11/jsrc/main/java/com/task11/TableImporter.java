@@ -0,0 +1,97 @@
+package com.task11;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutRequest;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+/**
+ * Writes tables in BatchWriteItem chunks of {@link #CHUNK_SIZE} that run in parallel on the given executor.
+ * Items DynamoDB returns as unprocessed are retried with exponential backoff; whatever is still
+ * unprocessed after {@link #MAX_ATTEMPTS} is reported as failed instead of failing the whole import.
+ */
+final class TableImporter {
+
+	static final int CHUNK_SIZE = 25;
+
+	private static final int MAX_ATTEMPTS = 6;
+
+	private static final long BASE_BACKOFF_MILLIS = 50;
+
+	private final DynamoDbAsyncClient dynamoDbClient;
+
+	private final String tableName;
+
+	private final ExecutorService executor;
+
+	private final Function<ApiHandler.Table, Map<String, AttributeValue>> itemMapper;
+
+	TableImporter(DynamoDbAsyncClient dynamoDbClient, String tableName, ExecutorService executor,
+				  Function<ApiHandler.Table, Map<String, AttributeValue>> itemMapper) {
+		this.dynamoDbClient = dynamoDbClient;
+		this.tableName = tableName;
+		this.executor = executor;
+		this.itemMapper = itemMapper;
+	}
+
+	/**
+	 * Returns the error of every table that could not be written, keyed by table id; ids absent from the map were written.
+	 * The ids must be unique, BatchWriteItem rejects a chunk that puts the same key twice.
+	 */
+	Map<String, String> importTables(List<ApiHandler.Table> tables) {
+		var chunks = new ArrayList<CompletableFuture<Map<String, String>>>();
+		for (int from = 0; from < tables.size(); from += CHUNK_SIZE) {
+			var chunk = tables.subList(from, Math.min(from + CHUNK_SIZE, tables.size()));
+			chunks.add(CompletableFuture.supplyAsync(() -> writeChunk(chunk), executor));
+		}
+		var failures = new HashMap<String, String>();
+		Futures.awaitAll(chunks).forEach(failures::putAll);
+		return failures;
+	}
+
+	private Map<String, String> writeChunk(List<ApiHandler.Table> chunk) {
+		var failures = new HashMap<String, String>();
+		List<WriteRequest> pending = new ArrayList<>();
+		for (var table : chunk) {
+			pending.add(WriteRequest.builder().putRequest(PutRequest.builder().item(itemMapper.apply(table)).build()).build());
+		}
+		try {
+			for (int attempt = 1; !pending.isEmpty(); attempt++) {
+				if (attempt > 1) {
+					sleepBackoff(attempt);
+				}
+				var result = Futures.await(dynamoDbClient.batchWriteItem(BatchWriteItemRequest.builder()
+						.requestItems(Map.of(tableName, pending))
+						.build()));
+				pending = result.unprocessedItems().getOrDefault(tableName, List.of());
+				if (!pending.isEmpty() && attempt == MAX_ATTEMPTS) {
+					pending.forEach(request -> failures.put(idOf(request), "not processed after " + MAX_ATTEMPTS + " attempts"));
+					break;
+				}
+			}
+		} catch (Exception e) {
+			System.err.println("Error while importing tables chunk " + e.getMessage());
+			pending.forEach(request -> failures.put(idOf(request), e.getMessage()));
+		}
+		return failures;
+	}
+
+	private String idOf(WriteRequest request) {
+		return request.putRequest().item().get("id").n();
+	}
+
+	private void sleepBackoff(int attempt) throws InterruptedException {
+		long ceiling = BASE_BACKOFF_MILLIS << (attempt - 2);
+		Thread.sleep(ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1));
+	}
+}
@@ -0,0 +1,56 @@
+package com.task11;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/**
+ * Immutable in-memory index of the tables catalog ordered by number of places, so the smallest tables
+ * that still fit a party are found without looking at the smaller ones.
+ */
+final class TableIndex {
+
+	private static final Comparator<ApiHandler.Table> WITHIN_SAME_SIZE = Comparator
+			.comparing((ApiHandler.Table table) -> table.minOrder() == null ? 0 : table.minOrder().intValue())
+			.thenComparing(table -> table.number().intValue());
+
+	private final NavigableMap<Integer, List<ApiHandler.Table>> tablesByPlaces;
+
+	private TableIndex(NavigableMap<Integer, List<ApiHandler.Table>> tablesByPlaces) {
+		this.tablesByPlaces = tablesByPlaces;
+	}
+
+	static TableIndex of(Collection<ApiHandler.Table> tables) {
+		var tablesByPlaces = new TreeMap<Integer, List<ApiHandler.Table>>();
+		for (var table : tables) {
+			tablesByPlaces.computeIfAbsent(table.places().intValue(), places -> new ArrayList<>()).add(table);
+		}
+		tablesByPlaces.values().forEach(sameSize -> sameSize.sort(WITHIN_SAME_SIZE));
+		return new TableIndex(tablesByPlaces);
+	}
+
+	/**
+	 * Tables with at least {@code partySize} places that match the VIP / minimum order constraints,
+	 * best fit first: fewest places, then lowest minimum order, then table number.
+	 *
+	 * @param vip         required VIP flag, or null for any
+	 * @param maxMinOrder highest acceptable minimum order, or null for any
+	 */
+	Iterable<ApiHandler.Table> candidates(int partySize, Boolean vip, Integer maxMinOrder) {
+		Predicate<ApiHandler.Table> matches = table -> (vip == null || vip.equals(table.isVip()))
+				&& (maxMinOrder == null || table.minOrder() == null || table.minOrder().intValue() <= maxMinOrder);
+		return () -> tablesByPlaces.tailMap(partySize, true).values().stream()
+				.flatMap(List::stream)
+				.filter(matches)
+				.iterator();
+	}
+
+	// Every table of the catalog, in the same order as candidates
+	Iterable<ApiHandler.Table> all() {
+		return () -> tablesByPlaces.values().stream().flatMap(List::stream).iterator();
+	}
+}
@@ -0,0 +1,66 @@
+package com.task11;
+
+/**
+ * Reservation slot as a half-open minute-of-day range [startMinute, endMinute).
+ * Two slots conflict when their ranges intersect; touching slots (13:00-15:00 and 15:00-17:00) do not.
+ */
+public record TimeSlot(int startMinute, int endMinute) {
+
+	public static final int MINUTES_PER_DAY = 24 * 60;
+
+	public TimeSlot {
+		if (startMinute < 0 || endMinute > MINUTES_PER_DAY || startMinute >= endMinute) {
+			throw new IllegalArgumentException("Invalid time slot " + startMinute + "-" + endMinute);
+		}
+	}
+
+	public static TimeSlot parse(String slotTimeStart, String slotTimeEnd) {
+		return new TimeSlot(parseMinuteOfDay(slotTimeStart), parseMinuteOfDay(slotTimeEnd));
+	}
+
+	// Accepts "H:mm" and "HH:mm"; "24:00" is allowed as an end of day marker
+	static int parseMinuteOfDay(String time) {
+		if (time == null) {
+			throw new IllegalArgumentException("Slot time is missing");
+		}
+		int separator = time.indexOf(':');
+		if (separator < 1 || separator > 2 || time.length() != separator + 3) {
+			throw new IllegalArgumentException("Invalid slot time " + time);
+		}
+		int hours = parseDigits(time, 0, separator);
+		int minutes = parseDigits(time, separator + 1, time.length());
+		if (hours > 24 || minutes > 59 || (hours == 24 && minutes != 0)) {
+			throw new IllegalArgumentException("Invalid slot time " + time);
+		}
+		return hours * 60 + minutes;
+	}
+
+	private static int parseDigits(String value, int from, int to) {
+		int result = 0;
+		for (int i = from; i < to; i++) {
+			char c = value.charAt(i);
+			if (c < '0' || c > '9') {
+				throw new IllegalArgumentException("Invalid slot time " + value);
+			}
+			result = result * 10 + (c - '0');
+		}
+		return result;
+	}
+
+	// Compact "startMinute-endMinute" form used in the occupancy ledger string set
+	static TimeSlot decode(String encoded) {
+		int separator = encoded.indexOf('-');
+		if (separator < 1) {
+			throw new IllegalArgumentException("Invalid encoded time slot " + encoded);
+		}
+		return new TimeSlot(Integer.parseInt(encoded.substring(0, separator)), Integer.parseInt(encoded.substring(separator + 1)));
+	}
+
+	String encode() {
+		return startMinute + "-" + endMinute;
+	}
+
+	public boolean overlaps(TimeSlot other) {
+		return startMinute < other.endMinute && other.startMinute < endMinute;
+	}
+}
@@ -0,0 +1,194 @@
+package com.task11;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.RSAPublicKeySpec;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Verifies Cognito id tokens locally: RS256 signature against the pool's JWKS, expiry, issuer, audience
+ * and token_use. The key set is downloaded once per container and only refetched when a token names an
+ * unknown key id (key rotation), at most once per {@link #JWKS_REFRESH_INTERVAL}.
+ */
+final class TokenVerifier {
+
+	private static final Duration JWKS_REFRESH_INTERVAL = Duration.ofMinutes(1);
+
+	private static final long CLOCK_SKEW_SECONDS = 30;
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private final Supplier<String> issuer;
+
+	private final Supplier<String> audience;
+
+	private final Function<String, String> jwksLoader;
+
+	private final Supplier<Long> clock;
+
+	private Map<String, PublicKey> keys = Map.of();
+
+	private String keysIssuer;
+
+	private long keysLoadedAtNanos;
+
+	/**
+	 * @param jwksLoader returns the JWKS document of an issuer; {@link #httpJwksLoader()} in production,
+	 *                   a local key set in tests
+	 * @param clock      current time in epoch seconds
+	 */
+	TokenVerifier(Supplier<String> issuer, Supplier<String> audience, Function<String, String> jwksLoader, Supplier<Long> clock) {
+		this.issuer = issuer;
+		this.audience = audience;
+		this.jwksLoader = jwksLoader;
+		this.clock = clock;
+	}
+
+	static String cognitoIssuer(String region, String userPoolId) {
+		return "https://cognito-idp." + region + ".amazonaws.com/" + userPoolId;
+	}
+
+	static Function<String, String> httpJwksLoader() {
+		var httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build();
+		return issuer -> {
+			try {
+				var request = HttpRequest.newBuilder(URI.create(issuer + "/.well-known/jwks.json"))
+						.timeout(Duration.ofSeconds(3))
+						.GET()
+						.build();
+				var response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+				if (response.statusCode() != 200) {
+					throw new IllegalStateException("JWKS request failed with status " + response.statusCode());
+				}
+				return response.body();
+			} catch (IOException e) {
+				throw new IllegalStateException("JWKS request failed: " + e.getMessage(), e);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("JWKS request interrupted", e);
+			}
+		};
+	}
+
+	/**
+	 * Returns the token claims or throws {@link InvalidTokenException}. Accepts an optional "Bearer " prefix.
+	 */
+	JsonNode verify(String token) {
+		if (token == null || token.isBlank()) {
+			throw new InvalidTokenException("missing token");
+		}
+		if (token.regionMatches(true, 0, "Bearer ", 0, 7)) {
+			token = token.substring(7).trim();
+		}
+		var parts = token.split("\\.");
+		if (parts.length != 3) {
+			throw new InvalidTokenException("malformed token");
+		}
+		var header = decodeJson(parts[0]);
+		if (!"RS256".equals(header.path("alg").asText())) {
+			throw new InvalidTokenException("unsupported algorithm");
+		}
+		var expectedIssuer = issuer.get();
+		var key = publicKey(expectedIssuer, header.path("kid").asText());
+		if (!signatureMatches(key, parts)) {
+			throw new InvalidTokenException("invalid signature");
+		}
+
+		var claims = decodeJson(parts[1]);
+		long now = clock.get();
+		if (!claims.path("exp").canConvertToLong() || claims.path("exp").asLong() + CLOCK_SKEW_SECONDS < now) {
+			throw new InvalidTokenException("token expired");
+		}
+		if (!expectedIssuer.equals(claims.path("iss").asText())) {
+			throw new InvalidTokenException("unexpected issuer");
+		}
+		if (!"id".equals(claims.path("token_use").asText())) {
+			throw new InvalidTokenException("not an id token");
+		}
+		if (!audience.get().equals(claims.path("aud").asText())) {
+			throw new InvalidTokenException("unexpected audience");
+		}
+		return claims;
+	}
+
+	private synchronized PublicKey publicKey(String expectedIssuer, String keyId) {
+		var key = expectedIssuer.equals(keysIssuer) ? keys.get(keyId) : null;
+		if (key == null && (!expectedIssuer.equals(keysIssuer)
+				|| System.nanoTime() - keysLoadedAtNanos > JWKS_REFRESH_INTERVAL.toNanos())) {
+			keys = parseKeys(jwksLoader.apply(expectedIssuer));
+			keysIssuer = expectedIssuer;
+			keysLoadedAtNanos = System.nanoTime();
+			key = keys.get(keyId);
+		}
+		if (key == null) {
+			throw new InvalidTokenException("unknown signing key");
+		}
+		return key;
+	}
+
+	private static Map<String, PublicKey> parseKeys(String jwks) {
+		var parsed = new HashMap<String, PublicKey>();
+		try {
+			var keyFactory = KeyFactory.getInstance("RSA");
+			for (var jwk : MAPPER.readTree(jwks).path("keys")) {
+				if (!"RSA".equals(jwk.path("kty").asText())) {
+					continue;
+				}
+				var modulus = new BigInteger(1, Base64.getUrlDecoder().decode(jwk.path("n").asText()));
+				var exponent = new BigInteger(1, Base64.getUrlDecoder().decode(jwk.path("e").asText()));
+				parsed.put(jwk.path("kid").asText(), keyFactory.generatePublic(new RSAPublicKeySpec(modulus, exponent)));
+			}
+		} catch (IOException | GeneralSecurityException | IllegalArgumentException e) {
+			throw new IllegalStateException("Invalid JWKS: " + e.getMessage(), e);
+		}
+		System.out.println("Loaded " + parsed.size() + " signing keys");
+		return parsed;
+	}
+
+	private static boolean signatureMatches(PublicKey key, String[] parts) {
+		try {
+			var signature = Signature.getInstance("SHA256withRSA");
+			signature.initVerify(key);
+			signature.update((parts[0] + "." + parts[1]).getBytes(StandardCharsets.US_ASCII));
+			return signature.verify(Base64.getUrlDecoder().decode(parts[2]));
+		} catch (GeneralSecurityException | IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	private static JsonNode decodeJson(String part) {
+		try {
+			var node = MAPPER.readTree(Base64.getUrlDecoder().decode(part));
+			if (node == null || !node.isObject()) {
+				throw new InvalidTokenException("malformed token");
+			}
+			return node;
+		} catch (IOException | IllegalArgumentException e) {
+			throw new InvalidTokenException("malformed token");
+		}
+	}
+
+	static final class InvalidTokenException extends RuntimeException {
+
+		InvalidTokenException(String message) {
+			super(message);
+		}
+	}
+}
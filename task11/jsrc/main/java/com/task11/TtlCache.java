@@ -0,0 +1,94 @@
+package com.task11;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Bounded, least recently used read-through cache that lives as long as the Lambda container.
+ * A loader returning {@code null} is remembered as a miss for {@code negativeTtl} (zero disables negative caching).
+ * Loads run outside the lock, so two callers may occasionally load the same key; the last one wins.
+ */
+final class TtlCache<K, V> {
+
+	private final long ttlNanos;
+
+	private final long negativeTtlNanos;
+
+	private final Map<K, Entry<V>> entries;
+
+	TtlCache(int maxEntries, Duration ttl, Duration negativeTtl) {
+		this.ttlNanos = ttl.toNanos();
+		this.negativeTtlNanos = negativeTtl.toNanos();
+		this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	Optional<V> get(K key, Function<K, V> loader) {
+		var cached = lookup(key);
+		if (cached != null) {
+			return cached;
+		}
+		var value = loader.apply(key);
+		store(key, value);
+		return Optional.ofNullable(value);
+	}
+
+	/**
+	 * Same as {@link #get} for loaders that call an asynchronous client; a failed load is not cached.
+	 */
+	CompletableFuture<Optional<V>> getAsync(K key, Function<K, CompletableFuture<V>> loader) {
+		var cached = lookup(key);
+		if (cached != null) {
+			return CompletableFuture.completedFuture(cached);
+		}
+		return loader.apply(key).thenApply(value -> {
+			store(key, value);
+			return Optional.ofNullable(value);
+		});
+	}
+
+	// Returns null when the key has to be loaded
+	private synchronized Optional<V> lookup(K key) {
+		var entry = entries.get(key);
+		if (entry != null) {
+			if (entry.expiresAtNanos - System.nanoTime() > 0) {
+				return Optional.ofNullable(entry.value);
+			}
+			entries.remove(key);
+		}
+		return null;
+	}
+
+	private void store(K key, V value) {
+		if (value != null) {
+			put(key, value);
+		} else if (negativeTtlNanos > 0) {
+			synchronized (this) {
+				entries.put(key, new Entry<>(null, System.nanoTime() + negativeTtlNanos));
+			}
+		}
+	}
+
+	synchronized void put(K key, V value) {
+		entries.put(key, new Entry<>(value, System.nanoTime() + ttlNanos));
+	}
+
+	synchronized void invalidate(K key) {
+		entries.remove(key);
+	}
+
+	synchronized void invalidateAll() {
+		entries.clear();
+	}
+
+	private record Entry<V>(V value, long expiresAtNanos) {
+	}
+}
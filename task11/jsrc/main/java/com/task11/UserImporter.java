@@ -0,0 +1,156 @@
+package com.task11;
+
+import software.amazon.awssdk.services.cognitoidentityprovider.model.TooManyRequestsException;
+import software.amazon.awssdk.services.cognitoidentityprovider.model.UsernameExistsException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Creates Cognito users in parallel on the given executor. All calls pass a token bucket, so a big import
+ * does not use up the account-wide UserCreation quota that regular sign-ups share. The bucket
+ * adapts: every TooManyRequestsException halves its rate, and every success raises it again a little,
+ * up to {@link #MAX_RATE}. Throttled users are retried with jittered backoff. Users that already exist
+ * are reported as such and are not changed.
+ * <p>
+ * Under sustained throttling the rate drops to {@link #MIN_RATE}, far too slow for {@link #MAX_USERS} within one
+ * request. Imports therefore run against a deadline: users whose next attempt would not start before it are
+ * reported as UNPROCESSED, so the caller gets a partial result in time and can send those users again.
+ */
+final class UserImporter {
+
+	static final int MAX_USERS = 300;
+
+	private static final double MAX_RATE = 20;
+
+	private static final double MIN_RATE = 1;
+
+	private static final double RATE_STEP = 0.1;
+
+	private static final int BURST = 10;
+
+	private static final int MAX_ATTEMPTS = 5;
+
+	private static final long BASE_BACKOFF_MILLIS = 200;
+
+	private final ExecutorService executor;
+
+	// Kept per container: a rate learned while throttled also applies to the next import
+	private final AdaptiveRateLimiter limiter = new AdaptiveRateLimiter();
+
+	UserImporter(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Returns one result per user, in input order, with the email as id and CREATED, EXISTS, FAILED or UNPROCESSED
+	 * as status.
+	 *
+	 * @param createUser creates one user from its sign-up fields and throws the Cognito exception on failure
+	 * @param deadline   no Cognito call is started after this {@link System#nanoTime()} value
+	 */
+	List<ApiHandler.ImportResult> importUsers(List<Map<String, String>> users, Consumer<Map<String, String>> createUser, long deadline) {
+		var pending = new ArrayList<CompletableFuture<ApiHandler.ImportResult>>();
+		for (var user : users) {
+			pending.add(CompletableFuture.supplyAsync(() -> importUser(user, createUser, deadline), executor));
+		}
+		return Futures.awaitAll(pending);
+	}
+
+	private ApiHandler.ImportResult importUser(Map<String, String> user, Consumer<Map<String, String>> createUser, long deadline) {
+		var email = user.get("email");
+		for (int attempt = 1; ; attempt++) {
+			try {
+				if (!limiter.acquire(deadline)) {
+					return new ApiHandler.ImportResult(email, "UNPROCESSED", "not attempted before the request deadline");
+				}
+				createUser.accept(user);
+				limiter.onSuccess();
+				return new ApiHandler.ImportResult(email, "CREATED", null);
+			} catch (UsernameExistsException e) {
+				return new ApiHandler.ImportResult(email, "EXISTS", null);
+			} catch (TooManyRequestsException e) {
+				limiter.onThrottled();
+				if (attempt == MAX_ATTEMPTS) {
+					return new ApiHandler.ImportResult(email, "FAILED", "throttled after " + MAX_ATTEMPTS + " attempts");
+				}
+				if (!sleepBackoff(attempt, deadline)) {
+					return new ApiHandler.ImportResult(email, "UNPROCESSED", "throttled, not retried before the request deadline");
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return new ApiHandler.ImportResult(email, "FAILED", "interrupted");
+			} catch (RuntimeException e) {
+				System.err.println("Error while importing user " + email + ": " + e.getMessage());
+				return new ApiHandler.ImportResult(email, "FAILED", e.getMessage());
+			}
+		}
+	}
+
+	// Returns false without sleeping if the retry would start after the deadline, or if interrupted
+	private boolean sleepBackoff(int attempt, long deadline) {
+		long ceiling = BASE_BACKOFF_MILLIS << (attempt - 1);
+		long sleepMillis = ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+		if (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sleepMillis) >= deadline) {
+			return false;
+		}
+		try {
+			Thread.sleep(sleepMillis);
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	// Token bucket whose refill rate follows additive increase / multiplicative decrease
+	private static final class AdaptiveRateLimiter {
+
+		private double rate = MAX_RATE;
+
+		private double tokens = BURST;
+
+		private long refilledAtNanos = System.nanoTime();
+
+		// Takes a token, waiting outside the lock if the bucket is empty; tokens below zero are reservations.
+		// Returns false, without taking a token, if the token would only be available after the deadline.
+		boolean acquire(long deadline) throws InterruptedException {
+			long waitNanos;
+			synchronized (this) {
+				refill();
+				waitNanos = tokens >= 1 ? 0 : (long) ((1 - tokens) / rate * TimeUnit.SECONDS.toNanos(1));
+				if (System.nanoTime() + waitNanos >= deadline) {
+					return false;
+				}
+				tokens -= 1;
+			}
+			if (waitNanos > 0) {
+				TimeUnit.NANOSECONDS.sleep(waitNanos);
+			}
+			return true;
+		}
+
+		synchronized void onSuccess() {
+			refill();
+			rate = Math.min(MAX_RATE, rate + RATE_STEP);
+		}
+
+		synchronized void onThrottled() {
+			refill();
+			rate = Math.max(MIN_RATE, rate / 2);
+			System.out.println("Cognito throttled user creation, lowering rate to " + rate + "/s");
+		}
+
+		private void refill() {
+			long now = System.nanoTime();
+			tokens = Math.min(BURST, tokens + (now - refilledAtNanos) * rate / TimeUnit.SECONDS.toNanos(1));
+			refilledAtNanos = now;
+		}
+	}
+}
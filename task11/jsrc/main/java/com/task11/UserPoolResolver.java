@@ -0,0 +1,113 @@
+package com.task11;
+
+import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderAsyncClient;
+import software.amazon.awssdk.services.cognitoidentityprovider.model.CreateUserPoolClientRequest;
+import software.amazon.awssdk.services.cognitoidentityprovider.model.ExplicitAuthFlowsType;
+import software.amazon.awssdk.services.cognitoidentityprovider.model.ListUserPoolClientsRequest;
+import software.amazon.awssdk.services.cognitoidentityprovider.model.ListUserPoolsRequest;
+import software.amazon.awssdk.services.cognitoidentityprovider.model.ResourceNotFoundException;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Resolves the booking user pool id and the app client used for admin authentication.
+ * Both are looked up once per container and cached for {@link #TTL}; the app client is reused
+ * (and created only if it does not exist yet) instead of being created on every sign-in.
+ * The cached values are futures, so concurrent callers share one lookup; failed lookups are not kept.
+ * Callers {@link #invalidate()} the cache when Cognito reports that the pool or client is gone.
+ */
+final class UserPoolResolver {
+
+	static final String APP_CLIENT_NAME = "api_client";
+
+	private static final Duration TTL = Duration.ofMinutes(30);
+
+	private final CognitoIdentityProviderAsyncClient identityProviderClient;
+
+	private final String userPoolName;
+
+	private CompletableFuture<String> userPoolId;
+
+	private CompletableFuture<String> appClientId;
+
+	private long resolvedAtNanos;
+
+	UserPoolResolver(CognitoIdentityProviderAsyncClient identityProviderClient, String userPoolName) {
+		this.identityProviderClient = identityProviderClient;
+		this.userPoolName = userPoolName;
+	}
+
+	synchronized CompletableFuture<String> userPoolId() {
+		if (userPoolId == null || userPoolId.isCompletedExceptionally() || isExpired()) {
+			userPoolId = findUserPoolId();
+			appClientId = null;
+			resolvedAtNanos = System.nanoTime();
+		}
+		return userPoolId;
+	}
+
+	synchronized CompletableFuture<String> appClientId() {
+		var poolId = userPoolId();
+		if (appClientId == null || appClientId.isCompletedExceptionally()) {
+			appClientId = poolId.thenCompose(this::findOrCreateAppClient);
+		}
+		return appClientId;
+	}
+
+	synchronized void invalidate() {
+		System.out.println("Invalidating cached user pool and app client of " + userPoolName);
+		userPoolId = null;
+		appClientId = null;
+	}
+
+	private boolean isExpired() {
+		return System.nanoTime() - resolvedAtNanos > TTL.toNanos();
+	}
+
+	private CompletableFuture<String> findUserPoolId() {
+		System.out.println("Resolving user pool id for " + userPoolName);
+		var poolId = new AtomicReference<String>();
+		return identityProviderClient.listUserPoolsPaginator(ListUserPoolsRequest.builder().maxResults(60).build())
+				.userPools()
+				.filter(userPool -> userPool.name().equals(userPoolName))
+				.limit(1)
+				.subscribe(userPool -> poolId.set(userPool.id()))
+				.thenApply(done -> {
+					if (poolId.get() == null) {
+						throw ResourceNotFoundException.builder().message("User pool " + userPoolName + " not found").build();
+					}
+					System.out.println("User pool id: " + poolId.get());
+					return poolId.get();
+				});
+	}
+
+	private CompletableFuture<String> findOrCreateAppClient(String poolId) {
+		var existingClientId = new AtomicReference<String>();
+		return identityProviderClient.listUserPoolClientsPaginator(ListUserPoolClientsRequest.builder()
+						.userPoolId(poolId)
+						.maxResults(60)
+						.build())
+				.userPoolClients()
+				.filter(client -> APP_CLIENT_NAME.equals(client.clientName()))
+				.limit(1)
+				.subscribe(client -> existingClientId.set(client.clientId()))
+				.thenCompose(done -> {
+					if (existingClientId.get() != null) {
+						System.out.println("Reusing app client " + existingClientId.get());
+						return CompletableFuture.completedFuture(existingClientId.get());
+					}
+					return identityProviderClient.createUserPoolClient(CreateUserPoolClientRequest.builder()
+									.userPoolId(poolId)
+									.explicitAuthFlows(ExplicitAuthFlowsType.ALLOW_ADMIN_USER_PASSWORD_AUTH,
+											ExplicitAuthFlowsType.ALLOW_REFRESH_TOKEN_AUTH)
+									.clientName(APP_CLIENT_NAME)
+									.build())
+							.thenApply(result -> {
+								System.out.println("Created app client " + result.userPoolClient().clientId());
+								return result.userPoolClient().clientId();
+							});
+				});
+	}
+}
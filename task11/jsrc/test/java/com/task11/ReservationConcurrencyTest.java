@@ -0,0 +1,165 @@
+package com.task11;
+
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeDefinition;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BillingMode;
+import software.amazon.awssdk.services.dynamodb.model.CreateTableRequest;
+import software.amazon.awssdk.services.dynamodb.model.DeleteTableRequest;
+import software.amazon.awssdk.services.dynamodb.model.GlobalSecondaryIndex;
+import software.amazon.awssdk.services.dynamodb.model.KeySchemaElement;
+import software.amazon.awssdk.services.dynamodb.model.KeyType;
+import software.amazon.awssdk.services.dynamodb.model.Projection;
+import software.amazon.awssdk.services.dynamodb.model.ProjectionType;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScalarAttributeType;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.Select;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Fires concurrent bookings of overlapping slots at DynamoDB Local and checks that exactly one of them is stored.
+ * Start DynamoDB Local first, e.g. {@code docker run -p 8000:8000 amazon/dynamodb-local}; another endpoint can be
+ * given with {@code -Ddynamodb.endpoint=http://host:port}. The test is skipped when nothing listens there.
+ */
+public class ReservationConcurrencyTest {
+
+	private static final URI ENDPOINT = URI.create(System.getProperty("dynamodb.endpoint", "http://localhost:8000"));
+
+	private static final int CONCURRENT_BOOKINGS = 16;
+
+	private static final int TABLE_NUMBER = 7;
+
+	private static final String SUFFIX = "-" + UUID.randomUUID();
+
+	private static final Map<String, String> ENVIRONMENT = Map.of(
+			"region", "us-east-1",
+			"tables_table", "Tables" + SUFFIX,
+			"reservations_table", "Reservations" + SUFFIX,
+			"occupancy_table", "Occupancy" + SUFFIX,
+			"idempotency_table", "Idempotency" + SUFFIX,
+			"booking_userpool", "unused");
+
+	private static DynamoDbAsyncClient dynamoDbClient;
+
+	@BeforeClass
+	public static void createTables() {
+		Assume.assumeTrue("DynamoDB Local is not running at " + ENDPOINT, isListening(ENDPOINT));
+		dynamoDbClient = DynamoDbAsyncClient.builder()
+				.endpointOverride(ENDPOINT)
+				.region(Region.US_EAST_1)
+				.credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("local", "local")))
+				.build();
+
+		createTable(ENVIRONMENT.get("tables_table"), "id", ScalarAttributeType.N, "number-index", "number", ScalarAttributeType.N);
+		createTable(ENVIRONMENT.get("reservations_table"), "id", ScalarAttributeType.S, "tableDate-index", "tableDate", ScalarAttributeType.S);
+		createTable(ENVIRONMENT.get("occupancy_table"), "tableDate", ScalarAttributeType.S, null, null, null);
+		Futures.await(dynamoDbClient.putItem(PutItemRequest.builder()
+				.tableName(ENVIRONMENT.get("tables_table"))
+				.item(Map.of(
+						"id", AttributeValue.builder().n("1").build(),
+						"number", AttributeValue.builder().n(String.valueOf(TABLE_NUMBER)).build(),
+						"places", AttributeValue.builder().n("4").build(),
+						"isVip", AttributeValue.builder().bool(false).build()))
+				.build()));
+	}
+
+	@AfterClass
+	public static void deleteTables() {
+		if (dynamoDbClient == null) {
+			return;
+		}
+		for (var table : List.of("tables_table", "reservations_table", "occupancy_table")) {
+			Futures.await(dynamoDbClient.deleteTable(DeleteTableRequest.builder().tableName(ENVIRONMENT.get(table)).build()));
+		}
+		dynamoDbClient.close();
+	}
+
+	@Test
+	public void overlappingBookingsOfOneTableStoreExactlyOneReservation() throws Exception {
+		var apiHandler = new ApiHandler(dynamoDbClient, ENVIRONMENT::get);
+		var start = new CountDownLatch(1);
+		var executor = Executors.newFixedThreadPool(CONCURRENT_BOOKINGS);
+		try {
+			var responses = new ArrayList<Future<Integer>>();
+			for (int i = 0; i < CONCURRENT_BOOKINGS; i++) {
+				// Every slot overlaps 19:45-20:00, so at most one of them may be booked
+				var reservation = new ApiHandler.Reservation(TABLE_NUMBER, "client " + i, "+100000000" + i, "2024-07-26",
+						"19:" + String.format("%02d", i * 2), "20:" + String.format("%02d", i * 2));
+				responses.add(executor.submit(() -> {
+					start.await();
+					return apiHandler.persistReservation(reservation).getStatusCode();
+				}));
+			}
+			start.countDown();
+
+			int booked = 0;
+			for (var response : responses) {
+				if (response.get() == 200) {
+					booked++;
+				}
+			}
+			assertEquals("successful bookings", 1, booked);
+			assertEquals("stored reservations", 1, storedReservations());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static int storedReservations() {
+		return Futures.await(dynamoDbClient.scan(ScanRequest.builder()
+				.tableName(ENVIRONMENT.get("reservations_table"))
+				.select(Select.COUNT)
+				.consistentRead(true)
+				.build())).count();
+	}
+
+	private static void createTable(String name, String hashKey, ScalarAttributeType hashKeyType,
+									String indexName, String indexKey, ScalarAttributeType indexKeyType) {
+		var request = CreateTableRequest.builder()
+				.tableName(name)
+				.billingMode(BillingMode.PAY_PER_REQUEST)
+				.keySchema(KeySchemaElement.builder().attributeName(hashKey).keyType(KeyType.HASH).build());
+		var attributes = new ArrayList<AttributeDefinition>();
+		attributes.add(AttributeDefinition.builder().attributeName(hashKey).attributeType(hashKeyType).build());
+		if (indexName != null) {
+			attributes.add(AttributeDefinition.builder().attributeName(indexKey).attributeType(indexKeyType).build());
+			request.globalSecondaryIndexes(GlobalSecondaryIndex.builder()
+					.indexName(indexName)
+					.keySchema(KeySchemaElement.builder().attributeName(indexKey).keyType(KeyType.HASH).build())
+					.projection(Projection.builder().projectionType(ProjectionType.ALL).build())
+					.build());
+		}
+		Futures.await(dynamoDbClient.createTable(request.attributeDefinitions(attributes).build()));
+	}
+
+	private static boolean isListening(URI endpoint) {
+		try (var socket = new Socket()) {
+			socket.connect(new InetSocketAddress(endpoint.getHost(), endpoint.getPort()), 500);
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+}